@@ -0,0 +1,109 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares answering a batch of requests one call at a time with a single
+ * {@code FindMeetingQuery.queryAll} call. Requests in a batch vary in duration and attendees, like
+ * the options a scheduling assistant asks for in one user action.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BatchQueryBenchmark {
+  private static final int[] DURATIONS = {15, 30, 60, 90};
+
+  @Param({"1000", "100000"})
+  public int events;
+
+  @Param({"32"})
+  public int batchSize;
+
+  @Param({"3"})
+  public int attendeesPerEvent;
+
+  @Param({"1000"})
+  public int population;
+
+  private List<Event> calendar;
+  private EventIndex index;
+  private List<MeetingRequest> requests;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(42, population);
+    calendar = generator.events(events, attendeesPerEvent);
+    index = new EventIndex(calendar);
+
+    requests = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      requests.add(generator.request(1 + i % 4, i % 6, DURATIONS[i % DURATIONS.length]));
+    }
+  }
+
+  @Benchmark
+  public List<Collection<TimeRange>> singleCalls() {
+    FindMeetingQuery query = new FindMeetingQuery();
+    List<Collection<TimeRange>> answers = new ArrayList<>(requests.size());
+    for (MeetingRequest request : requests) {
+      answers.add(query.query(calendar, request));
+    }
+    return answers;
+  }
+
+  @Benchmark
+  public List<Collection<TimeRange>> batch() {
+    return new FindMeetingQuery().queryAll(calendar, requests);
+  }
+
+  @Benchmark
+  public List<Collection<TimeRange>> singleCallsIndex() {
+    FindMeetingQuery query = new FindMeetingQuery();
+    List<Collection<TimeRange>> answers = new ArrayList<>(requests.size());
+    for (MeetingRequest request : requests) {
+      answers.add(query.query(index, request));
+    }
+    return answers;
+  }
+
+  @Benchmark
+  public List<Collection<TimeRange>> batchIndex() {
+    return new FindMeetingQuery().queryAll(index, requests);
+  }
+}
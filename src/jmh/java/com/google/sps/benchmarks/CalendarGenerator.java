@@ -0,0 +1,147 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.EpochTimeRange;
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds synthetic calendars and meeting requests for the benchmarks. Generation is seeded so
+ * that every fork of a benchmark sees exactly the same calendar.
+ */
+public final class CalendarGenerator {
+  private static final int[] EVENT_LENGTHS = {15, 30, 30, 45, 60, 60, 90, 120};
+
+  private final Random random;
+  private final int population;
+
+  /**
+   * Creates a generator drawing attendees from {@code population} distinct people.
+   *
+   * @param seed The seed for the underlying random number generator.
+   * @param population The number of distinct people that may appear in events and requests.
+   */
+  public CalendarGenerator(long seed, int population) {
+    if (population <= 0) {
+      throw new IllegalArgumentException("population must be positive");
+    }
+
+    this.random = new Random(seed);
+    this.population = population;
+  }
+
+  /**
+   * Returns the name of the {@code index}-th person of the population.
+   */
+  public static String person(int index) {
+    return "Person " + index;
+  }
+
+  /**
+   * Generates {@code count} events, each with {@code attendeesPerEvent} attendees picked uniformly
+   * from the population and placed at a random time of the day.
+   */
+  public List<Event> events(int count, int attendeesPerEvent) {
+    List<Event> events = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      int length = EVENT_LENGTHS[random.nextInt(EVENT_LENGTHS.length)];
+      int start = random.nextInt(TimeRange.END_OF_DAY + 1 - length);
+
+      events.add(new Event("Event " + i, TimeRange.fromStartDuration(start, length),
+          people(attendeesPerEvent)));
+    }
+
+    return events;
+  }
+
+  /**
+   * Generates an index of {@code days} days starting with epoch day {@code firstDay}, holding
+   * {@code eventsPerDay} events a day with {@code attendeesPerEvent} attendees each.
+   */
+  public EventIndex horizonIndex(long firstDay, int days, int eventsPerDay,
+      int attendeesPerEvent) {
+    EventIndex index = new EventIndex();
+
+    for (int day = 0; day < days; day++) {
+      long dayStart = (firstDay + day) * EpochTimeRange.MINUTES_PER_DAY;
+
+      for (int i = 0; i < eventsPerDay; i++) {
+        int length = EVENT_LENGTHS[random.nextInt(EVENT_LENGTHS.length)];
+        int start = random.nextInt(TimeRange.END_OF_DAY + 1 - length);
+
+        index.add(EpochTimeRange.fromStartDuration(dayStart + start, length),
+            people(attendeesPerEvent));
+      }
+    }
+
+    return index;
+  }
+
+  /**
+   * Generates a request for {@code mandatory} attendees and {@code optional} optional attendees,
+   * all distinct, for a meeting lasting {@code duration} minutes.
+   */
+  public MeetingRequest request(int mandatory, int optional, int duration) {
+    if (mandatory + optional > population) {
+      throw new IllegalArgumentException("request names more people than the population holds");
+    }
+
+    List<String> people = distinctPeople(mandatory + optional);
+    MeetingRequest request = new MeetingRequest(people.subList(0, mandatory), duration);
+
+    for (String attendee : people.subList(mandatory, people.size())) {
+      request.addOptionalAttendee(attendee);
+    }
+
+    return request;
+  }
+
+  private Collection<String> people(int count) {
+    List<String> people = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      people.add(person(random.nextInt(population)));
+    }
+
+    return people;
+  }
+
+  private List<String> distinctPeople(int count) {
+    // Partial Fisher-Yates shuffle so large populations do not need a full permutation.
+    int[] indexes = new int[population];
+    for (int i = 0; i < population; i++) {
+      indexes[i] = i;
+    }
+
+    List<String> people = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int j = i + random.nextInt(population - i);
+      int swap = indexes[i];
+      indexes[i] = indexes[j];
+      indexes[j] = swap;
+      people.add(person(indexes[i]));
+    }
+
+    return people;
+  }
+}
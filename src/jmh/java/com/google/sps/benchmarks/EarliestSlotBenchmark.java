@@ -0,0 +1,94 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.EpochTimeRange;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@code FindMeetingQuery.findEarliest} with reading the first slot of a full query for
+ * the common "first time after now when everyone is free" request, on calendars of 100k events
+ * spread over a number of days. Neither request has optional attendees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class EarliestSlotBenchmark {
+  // 2024-10-04, so the calendar sits at a realistic place on the epoch timeline.
+  private static final long FIRST_DAY = 20000;
+
+  @Param({"100000"})
+  public int events;
+
+  @Param({"10", "100"})
+  public int days;
+
+  @Param({"3"})
+  public int attendeesPerEvent;
+
+  @Param({"1000"})
+  public int population;
+
+  @Param({"3", "30"})
+  public int mandatoryAttendees;
+
+  @Param({"30"})
+  public int duration;
+
+  private EventIndex index;
+  private MeetingRequest request;
+  private EpochTimeRange horizon;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(42, population);
+    index = generator.horizonIndex(FIRST_DAY, days, events / days, attendeesPerEvent);
+    request = generator.request(mandatoryAttendees, 0, duration);
+
+    // Search from 9:00 on the first day to the end of the calendar.
+    horizon = EpochTimeRange.fromStartEnd(
+        FIRST_DAY * EpochTimeRange.MINUTES_PER_DAY + TimeRange.getTimeInMinutes(9, 0),
+        (FIRST_DAY + days) * EpochTimeRange.MINUTES_PER_DAY);
+  }
+
+  @Benchmark
+  public Optional<EpochTimeRange> queryFirst() {
+    return new FindMeetingQuery().queryHorizonAsStream(index, request, horizon).findFirst();
+  }
+
+  @Benchmark
+  public Optional<EpochTimeRange> findEarliest() {
+    return new FindMeetingQuery().findEarliest(index, request, horizon);
+  }
+}
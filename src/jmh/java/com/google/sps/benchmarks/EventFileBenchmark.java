@@ -0,0 +1,96 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventFile;
+import com.google.sps.EventStore;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures starting up from an {@code EventFile}: mapping the file, and mapping it then answering
+ * a first query from it, against building an {@code EventStore} from the same events. The file is
+ * written once in the setup and stays in the page cache, so this is a warm start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class EventFileBenchmark {
+  @Param({"100000", "1000000"})
+  public int events;
+
+  @Param({"3"})
+  public int attendeesPerEvent;
+
+  @Param({"1000"})
+  public int population;
+
+  private Path path;
+  private List<Event> calendar;
+  private MeetingRequest request;
+
+  @Setup
+  public void setUp() throws IOException {
+    CalendarGenerator generator = new CalendarGenerator(42, population);
+    calendar = generator.events(events, attendeesPerEvent);
+    request = generator.request(3, 3, 30);
+
+    path = Files.createTempFile("events", ".bin");
+    EventFile.write(path, calendar);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(path);
+  }
+
+  @Benchmark
+  public EventFile open() throws IOException {
+    return EventFile.open(path);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> openThenQuery() throws IOException {
+    return new FindMeetingQuery().query(EventFile.open(path), request);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> buildStoreThenQuery() {
+    return new FindMeetingQuery().query(new EventStore(calendar), request);
+  }
+}
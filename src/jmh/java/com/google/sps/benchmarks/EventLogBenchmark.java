@@ -0,0 +1,97 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventLog;
+import com.google.sps.EventStore;
+import com.google.sps.TimeRange;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures sustained mutations through an {@code EventLog} on local disk, in mutations per second
+ * summed over all writer threads. Each mutation is synced before it returns, so the throughput
+ * comes from writers sharing syncs; run with {@code -t 1} to see the cost of one sync per change.
+ * Each thread alternately adds an event and removes it again, so the store stays small.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class EventLogBenchmark {
+  private Path directory;
+  private EventLog log;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("event-log");
+    log = EventLog.open(directory, new EventStore());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    log.close();
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  /**
+   * The event a thread adds and removes.
+   */
+  @State(Scope.Thread)
+  public static class Writer {
+    Event event;
+    boolean added;
+
+    @Setup
+    public void setUp() {
+      event = new Event("Event " + Thread.currentThread().getId(),
+          TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(9, 0), 30),
+          Arrays.asList(CalendarGenerator.person(0), CalendarGenerator.person(1)));
+    }
+  }
+
+  @Benchmark
+  public boolean mutate(Writer writer) throws IOException {
+    writer.added = !writer.added;
+    if (writer.added) {
+      log.add(writer.event);
+      return true;
+    }
+    return log.remove(writer.event);
+  }
+}
@@ -0,0 +1,113 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventStore;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the overlap queries of {@code EventStore} with scanning every event, for an hour-long
+ * range and for one attendee over the whole day.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class EventStoreBenchmark {
+  private static final TimeRange HOUR =
+      TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(9, 0), 60);
+
+  @Param({"1000", "100000"})
+  public int events;
+
+  @Param({"1000"})
+  public int population;
+
+  private List<Event> calendar;
+  private EventStore store;
+  private MeetingRequest request;
+  private String attendee;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(42, population);
+    calendar = generator.events(events, 3);
+    store = new EventStore(calendar);
+    request = generator.request(3, 3, 30);
+    attendee = request.getAttendees().iterator().next();
+  }
+
+  @Benchmark
+  public List<Event> rangeScan() {
+    List<Event> found = new ArrayList<>();
+    for (Event event : calendar) {
+      if (event.getWhen().overlaps(HOUR)) {
+        found.add(event);
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  public List<Event> rangeStore() {
+    return store.getEvents(HOUR);
+  }
+
+  @Benchmark
+  public List<Event> attendeeScan() {
+    List<Event> found = new ArrayList<>();
+    for (Event event : calendar) {
+      if (event.getAttendees().contains(attendee)) {
+        found.add(event);
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  public List<Event> attendeeStore() {
+    return store.getEvents(attendee, TimeRange.WHOLE_DAY);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> queryScan() {
+    return new FindMeetingQuery().query(calendar, request);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> queryStore() {
+    return new FindMeetingQuery().query(store, request);
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code FindMeetingQuery.query} over synthetic calendars. Throughput is reported in
+ * operations per millisecond and {@code SampleTime} reports latency percentiles. Add {@code -prof gc}
+ * to the JMH arguments to also report the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FindMeetingQueryBenchmark {
+  // The options of a typical duration picker.
+  private static final long[] PICKER_DURATIONS = {15, 30, 60, 90};
+
+  @Param({"10", "1000", "10000", "100000", "1000000"})
+  public int events;
+
+  @Param({"3"})
+  public int attendeesPerEvent;
+
+  @Param({"1000"})
+  public int population;
+
+  @Param({"3"})
+  public int mandatoryAttendees;
+
+  @Param({"3"})
+  public int optionalAttendees;
+
+  @Param({"30"})
+  public int duration;
+
+  private List<Event> calendar;
+  private EventIndex index;
+  private MeetingRequest request;
+  private List<MeetingRequest> pickerRequests;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(42, population);
+    calendar = generator.events(events, attendeesPerEvent);
+    index = new EventIndex(calendar);
+    request = generator.request(mandatoryAttendees, optionalAttendees, duration);
+
+    pickerRequests = new ArrayList<>();
+    for (long pickerDuration : PICKER_DURATIONS) {
+      MeetingRequest pickerRequest = new MeetingRequest(request.getAttendees(), pickerDuration);
+      for (String attendee : request.getOptionalAttendees()) {
+        pickerRequest.addOptionalAttendee(attendee);
+      }
+      pickerRequests.add(pickerRequest);
+    }
+  }
+
+  @Benchmark
+  public Collection<TimeRange> query() {
+    return new FindMeetingQuery().query(calendar, request);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> queryIndex() {
+    return new FindMeetingQuery().query(index, request);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> queryTopIndex() {
+    return new FindMeetingQuery().queryTop(index, request, 3);
+  }
+
+  @Benchmark
+  public List<Collection<TimeRange>> queryIndexPerDuration() {
+    FindMeetingQuery query = new FindMeetingQuery();
+    List<Collection<TimeRange>> answers = new ArrayList<>(pickerRequests.size());
+    for (MeetingRequest pickerRequest : pickerRequests) {
+      answers.add(query.query(index, pickerRequest));
+    }
+    return answers;
+  }
+
+  @Benchmark
+  public SortedMap<Long, Collection<TimeRange>> queryIndexDurations() {
+    return new FindMeetingQuery().queryDurations(index, request, PICKER_DURATIONS);
+  }
+}
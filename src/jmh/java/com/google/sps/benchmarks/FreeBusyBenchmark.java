@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a write-heavy calendar, where an event of one of the requested attendees is moved by
+ * a quarter of an hour between queries, so every query reads busy times that just changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class FreeBusyBenchmark {
+  @Param({"10000", "100000"})
+  public int events;
+
+  @Param({"3"})
+  public int attendeesPerEvent;
+
+  @Param({"1000"})
+  public int population;
+
+  private EventIndex index;
+  private MeetingRequest request;
+
+  // Events of the requested attendees, and the same events a quarter of an hour later.
+  private List<Event> originals;
+  private List<Event> moved;
+  private boolean[] isMoved;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(42, population);
+    List<Event> calendar = generator.events(events, attendeesPerEvent);
+    index = new EventIndex(calendar);
+    request = generator.request(3, 3, 30);
+
+    originals = new ArrayList<>();
+    moved = new ArrayList<>();
+    for (Event event : calendar) {
+      TimeRange when = event.getWhen();
+      boolean requested = false;
+      for (String attendee : event.getAttendees()) {
+        requested |= request.getAttendees().contains(attendee)
+            || request.getOptionalAttendees().contains(attendee);
+      }
+
+      if (requested && when.end() + 15 <= TimeRange.END_OF_DAY) {
+        originals.add(event);
+        moved.add(new Event(event.getTitle(),
+            TimeRange.fromStartDuration(when.start() + 15, when.duration()),
+            event.getAttendees()));
+      }
+    }
+    isMoved = new boolean[originals.size()];
+  }
+
+  @Benchmark
+  public boolean move() {
+    int i = next;
+    next = (next + 1) % originals.size();
+
+    Event from = isMoved[i] ? moved.get(i) : originals.get(i);
+    Event to = isMoved[i] ? originals.get(i) : moved.get(i);
+    isMoved[i] = !isMoved[i];
+
+    return index.move(from, to.getWhen());
+  }
+
+  @Benchmark
+  public Collection<TimeRange> moveThenQuery() {
+    move();
+    return new FindMeetingQuery().query(index, request);
+  }
+
+  @Benchmark
+  public Collection<TimeRange> query() {
+    return new FindMeetingQuery().query(index, request);
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.EpochTimeRange;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code FindMeetingQuery.queryHorizon} searching multi-day horizons for a one-hour slot,
+ * reading either the first page of the answer or all of it, and {@code queryHorizonAsStream}
+ * reading only the first slot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class HorizonBenchmark {
+  // 2024-10-04, so the horizon sits at a realistic place on the epoch timeline.
+  private static final long FIRST_DAY = 20000;
+
+  @Param({"30", "90", "365"})
+  public int days;
+
+  @Param({"1000"})
+  public int eventsPerDay;
+
+  @Param({"3"})
+  public int attendeesPerEvent;
+
+  @Param({"1000"})
+  public int population;
+
+  @Param({"10"})
+  public int pageSize;
+
+  private EventIndex index;
+  private MeetingRequest request;
+  private EpochTimeRange horizon;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(42, population);
+    // Index one extra day on each side so the horizon has events beyond its edges.
+    index = generator.horizonIndex(FIRST_DAY - 1, days + 2, eventsPerDay, attendeesPerEvent);
+    request = generator.request(3, 3, 60);
+    horizon = EpochTimeRange.ofDays(FIRST_DAY, days);
+  }
+
+  @Benchmark
+  public List<EpochTimeRange> firstPage() {
+    return new FindMeetingQuery().queryHorizon(index, request, horizon, 0, pageSize);
+  }
+
+  @Benchmark
+  public List<EpochTimeRange> wholeAnswer() {
+    return new FindMeetingQuery().queryHorizon(index, request, horizon, 0, Integer.MAX_VALUE);
+  }
+
+  @Benchmark
+  public Optional<EpochTimeRange> firstSlot() {
+    return new FindMeetingQuery().queryHorizonAsStream(index, request, horizon).findFirst();
+  }
+}
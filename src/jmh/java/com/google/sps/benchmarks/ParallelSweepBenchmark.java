@@ -0,0 +1,86 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.EpochTimeRange;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code FindMeetingQuery.queryHorizon} for a request naming hundreds of attendees over
+ * horizons of months, whose sweeps have hundreds of thousands of points and are split into chunks
+ * swept on the common fork/join pool. To see how the sweep scales, run it with
+ * {@code -jvmArgsAppend -Djava.util.concurrent.ForkJoinPool.common.parallelism=N} for several
+ * {@code N}; with a parallelism of 1 every sweep runs on the calling thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ParallelSweepBenchmark {
+  // 2024-10-04, so the horizon sits at a realistic place on the epoch timeline.
+  private static final long FIRST_DAY = 20000;
+
+  @Param({"28", "365"})
+  public int days;
+
+  @Param({"3000"})
+  public int eventsPerDay;
+
+  @Param({"3"})
+  public int attendeesPerEvent;
+
+  @Param({"1000"})
+  public int population;
+
+  @Param({"50"})
+  public int mandatoryAttendees;
+
+  @Param({"200"})
+  public int optionalAttendees;
+
+  private EventIndex index;
+  private MeetingRequest request;
+  private EpochTimeRange horizon;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(42, population);
+    index = generator.horizonIndex(FIRST_DAY, days, eventsPerDay, attendeesPerEvent);
+    request = generator.request(mandatoryAttendees, optionalAttendees, 30);
+    horizon = EpochTimeRange.ofDays(FIRST_DAY, days);
+  }
+
+  @Benchmark
+  public List<EpochTimeRange> wholeAnswer() {
+    return new FindMeetingQuery().queryHorizon(index, request, horizon, 0, Integer.MAX_VALUE);
+  }
+}
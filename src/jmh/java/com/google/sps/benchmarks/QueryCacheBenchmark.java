@@ -0,0 +1,179 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.QueryCache;
+import com.google.sps.TimeRange;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays a Zipf-distributed stream of meeting requests, where a few requests are asked over and
+ * over and most are rare, with and without a {@code QueryCache} in front of the query. The
+ * {@code writeEvery} parameter moves an event every that many requests, so part of the cache keeps
+ * going stale.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class QueryCacheBenchmark {
+  // Length of the replayed request stream, long enough for its mix to settle.
+  private static final int REPLAY_LENGTH = 1 << 16;
+
+  @Param({"10000", "100000"})
+  public int events;
+
+  @Param({"1000"})
+  public int population;
+
+  @Param({"10000"})
+  public int distinctRequests;
+
+  @Param({"1.0"})
+  public double skew;
+
+  @Param({"1000"})
+  public int capacity;
+
+  @Param({"0", "100"})
+  public int writeEvery;
+
+  private List<Event> calendar;
+  private EventIndex index;
+  private FindMeetingQuery query;
+  private QueryCache cache;
+  private MeetingRequest[] replay;
+  private int next;
+
+  // Events toggled between their own time and a quarter of an hour later.
+  private int nextMove;
+  private boolean[] moved;
+
+  @Setup
+  public void setUp() {
+    CalendarGenerator generator = new CalendarGenerator(42, population);
+    calendar = new ArrayList<>();
+    for (Event event : generator.events(events, 3)) {
+      if (event.getWhen().end() + 15 <= TimeRange.END_OF_DAY) {
+        calendar.add(event);
+      }
+    }
+    index = new EventIndex(calendar);
+    query = new FindMeetingQuery();
+    cache = new QueryCache(query, index, capacity);
+    moved = new boolean[calendar.size()];
+
+    List<MeetingRequest> requests = new ArrayList<>(distinctRequests);
+    for (int i = 0; i < distinctRequests; i++) {
+      requests.add(generator.request(3, 3, 30));
+    }
+
+    // Request i is drawn with probability proportional to 1 / (i + 1)^skew.
+    double[] cumulative = new double[distinctRequests];
+    double total = 0;
+    for (int i = 0; i < distinctRequests; i++) {
+      total += 1 / Math.pow(i + 1, skew);
+      cumulative[i] = total;
+    }
+
+    Random random = new Random(7);
+    replay = new MeetingRequest[REPLAY_LENGTH];
+    for (int i = 0; i < REPLAY_LENGTH; i++) {
+      int drawn = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+      replay[i] = requests.get((drawn >= 0) ? drawn : Math.min(-drawn - 1, distinctRequests - 1));
+    }
+  }
+
+  @Benchmark
+  public Collection<TimeRange> uncached() {
+    return query.query(index, nextRequest());
+  }
+
+  @Benchmark
+  public Collection<TimeRange> cached(HitRate hitRate) {
+    long hits = cache.hitCount();
+    Collection<TimeRange> answer = cache.query(nextRequest());
+    if (cache.hitCount() != hits) {
+      hitRate.hits++;
+    } else {
+      hitRate.misses++;
+    }
+
+    return answer;
+  }
+
+  /**
+   * Reports the hits and misses of {@code cached} next to its throughput, so the two can be read
+   * together.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class HitRate {
+    public long hits;
+    public long misses;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      hits = 0;
+      misses = 0;
+    }
+  }
+
+  private MeetingRequest nextRequest() {
+    int position = next;
+    next = (next + 1) % REPLAY_LENGTH;
+
+    if (writeEvery > 0 && position % writeEvery == 0) {
+      int i = nextMove;
+      nextMove = (nextMove + 1) % calendar.size();
+
+      Event event = calendar.get(i);
+      TimeRange when = event.getWhen();
+      TimeRange later = TimeRange.fromStartDuration(when.start() + 15, when.duration());
+      if (moved[i]) {
+        index.move(new Event(event.getTitle(), later, event.getAttendees()), when);
+      } else {
+        index.move(event, later);
+      }
+      moved[i] = !moved[i];
+    }
+
+    return replay[position];
+  }
+}
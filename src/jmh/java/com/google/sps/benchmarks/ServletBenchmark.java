@@ -0,0 +1,164 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.benchmarks;
+
+import com.google.sps.servlets.GetEventsServlet;
+import com.google.sps.servlets.QueryServlet;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Load test of the servlets against the demo calendar, with several threads sharing one servlet
+ * instance the way a container does. Requests and responses are stubs that read from a string and
+ * discard the body, so only the servlet's own work is measured. {@code SampleTime} reports latency
+ * percentiles; add {@code -prof gc} to the JMH arguments to see allocation per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Threads(4)
+public class ServletBenchmark {
+  private static final String MEETING_REQUEST = "{\"duration\":30,"
+      + "\"attendees\":[\"Amelia\",\"Ava\",\"Emma\"],"
+      + "\"optional_attendees\":[\"James\",\"Liam\",\"Olivia\"]}";
+
+  private GetEventsServlet getEvents;
+  private QueryServlet query;
+
+  private HttpServletRequest getRequest;
+  private HttpServletRequest postRequest;
+  private HttpServletResponse response;
+
+  @Setup
+  public void setUp(Blackhole blackhole) {
+    getEvents = new GetEventsServlet();
+    query = new QueryServlet();
+    query.init();
+
+    getRequest = request("");
+    postRequest = request(MEETING_REQUEST);
+    response = response(blackhole);
+  }
+
+  @TearDown
+  public void tearDown() {
+    query.destroy();
+  }
+
+  @Benchmark
+  public void getEvents() throws IOException {
+    getEvents.doGet(getRequest, response);
+  }
+
+  @Benchmark
+  public void query() throws IOException {
+    query.doPost(postRequest, response);
+  }
+
+  private static HttpServletRequest request(String body) {
+    return stub(HttpServletRequest.class, "getReader",
+        () -> new BufferedReader(new StringReader(body)), null);
+  }
+
+  private static HttpServletResponse response(Blackhole blackhole) {
+    ServletOutputStream out = new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        blackhole.consume(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        blackhole.consume(b);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener listener) {}
+    };
+
+    PrintWriter writer = new PrintWriter(new Writer() {
+      @Override
+      public void write(char[] buffer, int off, int len) {
+        blackhole.consume(buffer);
+      }
+
+      @Override
+      public void flush() {}
+
+      @Override
+      public void close() {}
+    });
+
+    HttpServletResponse response = stub(HttpServletResponse.class, "getOutputStream", () -> out,
+        null);
+    return stub(HttpServletResponse.class, "getWriter", () -> writer, response);
+  }
+
+  /**
+   * Returns a {@code type} whose {@code method} returns a value from {@code result}. Other calls go
+   * to {@code fallback}, or return a default value when there is none.
+   */
+  private static <T> T stub(Class<T> type, String method, Supplier<?> result, T fallback) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+        (proxy, called, args) -> {
+          if (called.getName().equals(method)) {
+            return result.get();
+          }
+          if (fallback != null) {
+            return called.invoke(fallback, args);
+          }
+
+          Class<?> returnType = called.getReturnType();
+          if (returnType == boolean.class) {
+            return false;
+          }
+          if (returnType.isPrimitive() && returnType != void.class) {
+            return 0;
+          }
+          return null;
+        }));
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide dictionary giving every attendee name a small int id, so that events can store
+ * their attendees as ids instead of holding their own copies of the names. Ids are handed out in
+ * order from zero and a name keeps its id for the life of the process, so the dictionary only
+ * grows. It is safe to use from any number of threads.
+ */
+final class AttendeeDictionary {
+  private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+
+  // Names by id. Replaced by a larger copy when full, and only written under the class lock, so
+  // readers may use whatever array they see for the ids they were given.
+  private static volatile String[] names = new String[256];
+  private static int size;
+
+  private AttendeeDictionary() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns the id of {@code name}, giving it the next free id if it has none yet.
+   */
+  static int intern(String name) {
+    Integer id = IDS.get(name);
+    return (id != null) ? id : add(name);
+  }
+
+  /**
+   * Returns the id of {@code name}, or -1 if it was never interned.
+   */
+  static int find(String name) {
+    Integer id = IDS.get(name);
+    return (id != null) ? id : -1;
+  }
+
+  /**
+   * Returns the name with id {@code id}.
+   */
+  static String name(int id) {
+    return names[id];
+  }
+
+  private static synchronized int add(String name) {
+    Integer id = IDS.get(name);
+    if (id != null) {
+      return id;
+    }
+
+    String[] current = names;
+    if (size == current.length) {
+      current = Arrays.copyOf(current, 2 * size);
+    }
+
+    // Publish the name before its id, so whoever gets the id can read the name.
+    current[size] = name;
+    names = current;
+    IDS.put(name, size);
+    return size++;
+  }
+}
@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+/**
+ * A span of time on an absolute timeline, measured in minutes since the Unix epoch. Unlike
+ * {@code TimeRange}, which is confined to the minutes of a single day, an {@code EpochTimeRange}
+ * can cover weeks or months. A {@code TimeRange} maps onto the first day of the epoch, so a
+ * single-day calendar and a multi-day one can share the same timeline.
+ */
+public final class EpochTimeRange {
+  public static final long MINUTES_PER_DAY = 24 * 60;
+
+  private final long start;
+  private final long duration;
+
+  private EpochTimeRange(long start, long duration) {
+    this.start = start;
+    this.duration = duration;
+  }
+
+  /**
+   * Returns the start of the range in minutes since the epoch.
+   */
+  public long start() {
+    return start;
+  }
+
+  /**
+   * Returns the number of minutes between the start and end.
+   */
+  public long duration() {
+    return duration;
+  }
+
+  /**
+   * Returns the end of the range. This ending value is the closing exclusive bound.
+   */
+  public long end() {
+    return start + duration;
+  }
+
+  /**
+   * Checks if two ranges overlap, i.e. share at least one minute.
+   */
+  public boolean overlaps(EpochTimeRange other) {
+    return start < other.end() && other.start < end();
+  }
+
+  /**
+   * Checks if {@code point} falls within this range. The end of the range is not included.
+   */
+  public boolean contains(long point) {
+    return start <= point && point < end();
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof EpochTimeRange && equals(this, (EpochTimeRange) other);
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(start) ^ Long.hashCode(duration);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Range: [%d, %d)", start, start + duration);
+  }
+
+  private static boolean equals(EpochTimeRange a, EpochTimeRange b) {
+    return a.start == b.start && a.duration == b.duration;
+  }
+
+  /**
+   * Creates a range from {@code start} up to, but not including, {@code end}.
+   */
+  public static EpochTimeRange fromStartEnd(long start, long end) {
+    return new EpochTimeRange(start, end - start);
+  }
+
+  /**
+   * Creates a range starting at {@code start} with a duration equal to {@code duration}.
+   */
+  public static EpochTimeRange fromStartDuration(long start, long duration) {
+    return new EpochTimeRange(start, duration);
+  }
+
+  /**
+   * Returns {@code days} whole days starting with day {@code day}, counting from 0 for the first
+   * day of the epoch.
+   */
+  public static EpochTimeRange ofDays(long day, long days) {
+    return new EpochTimeRange(day * MINUTES_PER_DAY, days * MINUTES_PER_DAY);
+  }
+
+  /**
+   * Returns the same minutes as {@code range} on the first day of the epoch.
+   */
+  public static EpochTimeRange of(TimeRange range) {
+    return new EpochTimeRange(range.start(), range.duration());
+  }
+}
@@ -14,9 +14,11 @@
 
 package com.google.sps;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
@@ -26,7 +28,10 @@ import java.util.Set;
 public final class Event {
   private final String title;
   private final TimeRange when;
-  private final Set<String> attendees = new HashSet<>();
+
+  // Ids of the attendees in the {@code AttendeeDictionary}, sorted and without duplicates. Events
+  // of the same people share the names instead of each holding a hash set of them.
+  private final int[] attendees;
 
   /**
    * Creates a new event.
@@ -50,7 +55,25 @@ public final class Event {
 
     this.title = title;
     this.when = when;
-    this.attendees.addAll(attendees);
+
+    int[] ids = new int[attendees.size()];
+    int count = 0;
+    for (String attendee : attendees) {
+      if (attendee == null) {
+        throw new IllegalArgumentException("attendees cannot contain null");
+      }
+
+      ids[count++] = AttendeeDictionary.intern(attendee);
+    }
+
+    Arrays.sort(ids, 0, count);
+    int distinct = 0;
+    for (int i = 0; i < count; i++) {
+      if (distinct == 0 || ids[i] != ids[distinct - 1]) {
+        ids[distinct++] = ids[i];
+      }
+    }
+    this.attendees = (distinct == ids.length) ? ids : Arrays.copyOf(ids, distinct);
   }
 
   /**
@@ -71,9 +94,16 @@ public final class Event {
    * Returns a read-only set of required attendees for this event.
    */
   public Set<String> getAttendees() {
-    // Return the attendees as an unmodifiable set so that the caller can't change our
+    // Return the attendees as an unmodifiable view so that the caller can't change our
     // internal data.
-    return Collections.unmodifiableSet(attendees);
+    return new AttendeeSet(attendees);
+  }
+
+  /**
+   * Returns the dictionary ids of the attendees, sorted. The array must not be modified.
+   */
+  int[] getAttendeeIds() {
+    return attendees;
   }
 
   @Override
@@ -89,8 +119,55 @@ public final class Event {
   }
 
   private static boolean equals(Event a, Event b) {
-    // {@code attendees} must be a set for equals to work as expected. According to the {@code Set}
-    // interface documentation, equals will check for set-equality across all set implementations.
-    return a.title.equals(b.title) && a.when.equals(b.when) && a.attendees.equals(b.attendees);
+    // {@code attendees} is sorted and free of duplicates, so equal sets have equal arrays.
+    return a.title.equals(b.title) && a.when.equals(b.when)
+        && Arrays.equals(a.attendees, b.attendees);
+  }
+
+  /**
+   * Read-only set of attendee names backed by their sorted ids.
+   */
+  private static final class AttendeeSet extends AbstractSet<String> {
+    private final int[] ids;
+
+    AttendeeSet(int[] ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public int size() {
+      return ids.length;
+    }
+
+    @Override
+    public boolean contains(Object attendee) {
+      if (!(attendee instanceof String)) {
+        return false;
+      }
+
+      int id = AttendeeDictionary.find((String) attendee);
+      return id >= 0 && Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return new Iterator<String>() {
+        private int next;
+
+        @Override
+        public boolean hasNext() {
+          return next < ids.length;
+        }
+
+        @Override
+        public String next() {
+          if (next == ids.length) {
+            throw new NoSuchElementException();
+          }
+
+          return AttendeeDictionary.name(ids[next++]);
+        }
+      };
+    }
   }
 }
@@ -0,0 +1,357 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only events kept in a columnar binary file that is memory mapped rather than read, so that
+ * opening even a very large calendar only reads its header, and queries read the columns they need
+ * straight from the page cache. Besides one column per event field, the file holds, for every
+ * attendee, the events they attend, so that a query only touches the events of the people it
+ * names. Files are written whole by {@link #write} and never change afterwards; a file is safe to
+ * share between threads.
+ *
+ * <p>The file is a header of eight ints followed by these sections, all big-endian:
+ *
+ * <pre>
+ *   int[events]        start of each event, in minutes of the day
+ *   int[events]        duration of each event
+ *   int[events]        title of each event, as an index into the titles
+ *   int[events + 1]    offset of the attendees of each event in the next section
+ *   int[attendances]   attendees of every event, as indexes into the names, sorted
+ *   int[names + 1]     offset of the events of each name in the next section
+ *   int[attendances]   events of every name, as event indexes, ascending
+ *   int[names + 1]     offset of each name in the name bytes
+ *   int[titles + 1]    offset of each title in the title bytes
+ *   byte[]             names in UTF-8, sorted by their bytes
+ *   byte[]             titles in UTF-8
+ * </pre>
+ */
+public final class EventFile {
+  private static final int MAGIC = 0x45564631; // "EVF1"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_INTS = 8;
+
+  private final int size;
+  private final IntBuffer starts;
+  private final IntBuffer durations;
+  private final IntBuffer titleIds;
+  private final IntBuffer attendeeOffsets;
+  private final IntBuffer attendees;
+  private final IntBuffer eventOffsets;
+  private final IntBuffer events;
+  private final MappedStrings names;
+  private final MappedStrings titles;
+
+  private EventFile(ByteBuffer buffer) throws IOException {
+    if (buffer.capacity() < HEADER_INTS * Integer.BYTES) {
+      throw new IOException("event file is truncated");
+    }
+
+    IntBuffer header = buffer.asIntBuffer();
+    if (header.get(0) != MAGIC || header.get(1) != FORMAT_VERSION) {
+      throw new IOException("not an event file of format version " + FORMAT_VERSION);
+    }
+
+    size = header.get(2);
+    int attendances = header.get(3);
+    int names = header.get(4);
+    int titles = header.get(5);
+    int nameLength = header.get(6);
+    int titleLength = header.get(7);
+
+    boolean negative = (size | attendances | names | titles | nameLength | titleLength) < 0;
+    if (negative || buffer.capacity()
+        != fileLength(size, attendances, names, titles, nameLength, titleLength)) {
+      throw new IOException("event file is corrupt");
+    }
+
+    int[] position = {HEADER_INTS * Integer.BYTES};
+    starts = ints(buffer, position, size);
+    durations = ints(buffer, position, size);
+    titleIds = ints(buffer, position, size);
+    attendeeOffsets = ints(buffer, position, size + 1);
+    attendees = ints(buffer, position, attendances);
+    eventOffsets = ints(buffer, position, names + 1);
+    events = ints(buffer, position, attendances);
+    IntBuffer nameOffsets = ints(buffer, position, names + 1);
+    IntBuffer titleOffsets = ints(buffer, position, titles + 1);
+    this.names = new MappedStrings(nameOffsets, bytes(buffer, position, nameLength));
+    this.titles = new MappedStrings(titleOffsets, bytes(buffer, position, titleLength));
+  }
+
+  /**
+   * Maps the event file at {@code file}. Only the header is read, and is checked against the
+   * length of the file.
+   *
+   * @throws IOException if the file cannot be read or is not a complete event file
+   */
+  public static EventFile open(Path file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("file cannot be null");
+    }
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("event file is larger than 2GB");
+      }
+
+      // The mapping stays valid after the channel is closed, until the buffer is collected.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new EventFile(buffer);
+    }
+  }
+
+  /**
+   * Writes {@code events} as an event file at {@code file}, replacing any file there. The events
+   * are written to a temporary file next to it, synced to disk and then moved into place, so
+   * readers never see a partly written file.
+   */
+  public static void write(Path file, Collection<Event> events) throws IOException {
+    if (file == null || events == null) {
+      throw new IllegalArgumentException("file and events cannot be null");
+    }
+
+    Event[] all = events.toArray(new Event[0]);
+
+    // Names sorted by their UTF-8 bytes, so that a name is found by binary search over the bytes
+    // in the file without decoding any of them.
+    Map<String, byte[]> encodedNames = new HashMap<>();
+    int attendances = 0;
+    for (Event event : all) {
+      for (String attendee : event.getAttendees()) {
+        encodedNames.computeIfAbsent(attendee, name -> name.getBytes(StandardCharsets.UTF_8));
+      }
+      attendances += event.getAttendeeIds().length;
+    }
+
+    String[] sortedNames = encodedNames.keySet().toArray(new String[0]);
+    Arrays.sort(sortedNames,
+        (a, b) -> MappedStrings.compare(encodedNames.get(a), encodedNames.get(b)));
+    byte[][] names = new byte[sortedNames.length][];
+    Map<String, Integer> nameIds = new HashMap<>();
+    for (int i = 0; i < sortedNames.length; i++) {
+      names[i] = encodedNames.get(sortedNames[i]);
+      nameIds.put(sortedNames[i], i);
+    }
+
+    Map<String, Integer> titleIds = new HashMap<>();
+    List<byte[]> titles = new ArrayList<>();
+    int[] eventTitles = new int[all.length];
+    int[][] eventAttendees = new int[all.length][];
+    int[] eventOffsets = new int[names.length + 1];
+
+    for (int e = 0; e < all.length; e++) {
+      String title = all[e].getTitle();
+      Integer titleId = titleIds.get(title);
+      if (titleId == null) {
+        titleId = titles.size();
+        titleIds.put(title, titleId);
+        titles.add(title.getBytes(StandardCharsets.UTF_8));
+      }
+      eventTitles[e] = titleId;
+
+      int[] ids = new int[all[e].getAttendeeIds().length];
+      int count = 0;
+      for (String attendee : all[e].getAttendees()) {
+        int id = nameIds.get(attendee);
+        ids[count++] = id;
+        eventOffsets[id + 1]++;
+      }
+      Arrays.sort(ids);
+      eventAttendees[e] = ids;
+    }
+
+    // Events of each name, by a counting sort of the attendances on name.
+    for (int n = 0; n < names.length; n++) {
+      eventOffsets[n + 1] += eventOffsets[n];
+    }
+    int[] nameEvents = new int[attendances];
+    int[] cursors = Arrays.copyOf(eventOffsets, names.length);
+    for (int e = 0; e < all.length; e++) {
+      for (int id : eventAttendees[e]) {
+        nameEvents[cursors[id]++] = e;
+      }
+    }
+
+    int nameLength = MappedStrings.totalLength(Arrays.asList(names));
+    int titleLength = MappedStrings.totalLength(titles);
+    if (fileLength(all.length, attendances, names.length, titles.size(), nameLength, titleLength)
+        > Integer.MAX_VALUE) {
+      throw new IOException("events do not fit in a 2GB event file");
+    }
+
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(all.length);
+      out.writeInt(attendances);
+      out.writeInt(names.length);
+      out.writeInt(titles.size());
+      out.writeInt(nameLength);
+      out.writeInt(titleLength);
+
+      for (Event event : all) {
+        out.writeInt(event.getWhen().start());
+      }
+      for (Event event : all) {
+        out.writeInt(event.getWhen().duration());
+      }
+      for (int titleId : eventTitles) {
+        out.writeInt(titleId);
+      }
+
+      int offset = 0;
+      out.writeInt(offset);
+      for (int[] ids : eventAttendees) {
+        offset += ids.length;
+        out.writeInt(offset);
+      }
+      for (int[] ids : eventAttendees) {
+        for (int id : ids) {
+          out.writeInt(id);
+        }
+      }
+
+      for (int eventOffset : eventOffsets) {
+        out.writeInt(eventOffset);
+      }
+      for (int event : nameEvents) {
+        out.writeInt(event);
+      }
+
+      MappedStrings.writeOffsets(out, Arrays.asList(names));
+      MappedStrings.writeOffsets(out, titles);
+      for (byte[] name : names) {
+        out.write(name);
+      }
+      for (byte[] title : titles) {
+        out.write(title);
+      }
+
+      out.flush();
+      channel.force(true);
+    }
+
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Returns the number of events in the file.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns event {@code index} of the file, in the order the events were written.
+   */
+  public Event getEvent(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("no event " + index + " in a file of " + size);
+    }
+
+    int from = attendeeOffsets.get(index);
+    int to = attendeeOffsets.get(index + 1);
+    List<String> attendeeNames = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++) {
+      attendeeNames.add(names.get(attendees.get(i)));
+    }
+
+    return new Event(titles.get(titleIds.get(index)),
+        TimeRange.fromStartDuration(starts.get(index), durations.get(index)), attendeeNames);
+  }
+
+  /**
+   * Returns every event of the file, in the order they were written.
+   */
+  public List<Event> getEvents() {
+    List<Event> all = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      all.add(getEvent(i));
+    }
+
+    return all;
+  }
+
+  /**
+   * Visits the time of every event of {@code attendee}, in the order the events were written,
+   * reading only those events.
+   */
+  void visitBusy(String attendee, FreeBusyCache.BusyVisitor visitor) {
+    int name = names.find(attendee);
+    if (name < 0) {
+      return;
+    }
+
+    for (int i = eventOffsets.get(name); i < eventOffsets.get(name + 1); i++) {
+      int event = events.get(i);
+      int start = starts.get(event);
+      visitor.visit(start, start + durations.get(event));
+    }
+  }
+
+  private static long fileLength(int events, int attendances, int names, int titles,
+      int nameLength, int titleLength) {
+    long ints = HEADER_INTS + 3L * events + (events + 1L) + 2L * attendances + 2L * (names + 1L)
+        + (titles + 1L);
+    return ints * Integer.BYTES + nameLength + titleLength;
+  }
+
+  /**
+   * Returns a view of the next {@code count} ints of {@code buffer} from {@code position[0]}, and
+   * moves the position past them.
+   */
+  private static IntBuffer ints(ByteBuffer buffer, int[] position, int count) {
+    ByteBuffer section = bytes(buffer, position, count * Integer.BYTES);
+    return section.asIntBuffer();
+  }
+
+  private static ByteBuffer bytes(ByteBuffer buffer, int[] position, int length) {
+    // Through Buffer, whose position and limit return Buffer on Java 8 as well: ByteBuffer only
+    // overrides them from Java 9 on, and calls linked to those overrides fail on Java 8.
+    ByteBuffer section = buffer.duplicate();
+    ((Buffer) section).position(position[0]);
+    ((Buffer) section).limit(position[0] + length);
+    position[0] += length;
+    return section.slice();
+  }
+}
@@ -0,0 +1,330 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Index from each attendee to the times they are busy. Busy times are kept merged and are updated
+ * in place as events are added, moved and removed, so that a query only has to read the busy times
+ * of the people it names, within the range it asks about, instead of scanning every event. Times
+ * are minutes since the epoch, so the index can hold calendars spanning many days; {@code Event}s,
+ * which are confined to one day, are placed on the first day of the epoch. The index is safe to
+ * share between threads.
+ */
+public final class EventIndex {
+  // Queries only read the index, so they share the lock and only wait for changes.
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private final FreeBusyCache busy;
+
+  // When each attendee's busy times last changed, as a count of the changes to the whole index.
+  // Entries are never dropped, so a version is never reused for the same attendee.
+  private final Map<String, Long> versions = new HashMap<>();
+  private long changes;
+
+  /**
+   * Creates an empty index.
+   */
+  public EventIndex() {
+    busy = new FreeBusyCache();
+  }
+
+  /**
+   * Creates an index holding every event of {@code events}.
+   *
+   * @param events The events to index. Must be non-null.
+   */
+  public EventIndex(Collection<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+
+    busy = new FreeBusyCache();
+    for (Event event : events) {
+      add(event);
+    }
+  }
+
+  private EventIndex(IndexSnapshot snapshot) {
+    busy = new FreeBusyCache(snapshot);
+  }
+
+  /**
+   * Opens an index from a snapshot written by {@link #writeSnapshot}. The snapshot is mapped and
+   * read in place rather than loaded, so the index can answer queries at once however large it is.
+   * Changes to the index are kept in memory and leave the file alone.
+   *
+   * @throws IOException if the file cannot be read or is not a complete snapshot
+   */
+  public static EventIndex openSnapshot(Path file) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("file cannot be null");
+    }
+
+    return new EventIndex(IndexSnapshot.open(file));
+  }
+
+  /**
+   * Same as {@link #openSnapshot(Path)}, for a snapshot that must have been written with the same
+   * {@code source} tag, so that an index of other events is never taken for this one.
+   *
+   * @throws IOException if the file cannot be read, is not a complete snapshot or has another tag
+   */
+  public static EventIndex openSnapshot(Path file, long source) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("file cannot be null");
+    }
+
+    IndexSnapshot snapshot = IndexSnapshot.open(file);
+    if (snapshot.source() != source) {
+      throw new IOException("index snapshot was written from other events");
+    }
+
+    return new EventIndex(snapshot);
+  }
+
+  /**
+   * Writes the busy times of every attendee to {@code file} as a snapshot for
+   * {@link #openSnapshot}, replacing any file there. The index is only locked while its busy times
+   * are copied, not while they are written.
+   */
+  public void writeSnapshot(Path file) throws IOException {
+    writeSnapshot(file, 0);
+  }
+
+  /**
+   * Same as {@link #writeSnapshot(Path)}, tagging the snapshot with {@code source}, e.g. a
+   * fingerprint of the events the index was built from.
+   */
+  public void writeSnapshot(Path file, long source) throws IOException {
+    if (file == null) {
+      throw new IllegalArgumentException("file cannot be null");
+    }
+
+    IndexSnapshot.Contents contents;
+    lock.readLock().lock();
+    try {
+      contents = busy.snapshot();
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    IndexSnapshot.write(file, contents, source);
+  }
+
+  /**
+   * Adds an event, making each of its attendees busy for its duration.
+   */
+  public void add(Event event) {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+
+    add(EpochTimeRange.of(event.getWhen()), event.getAttendees());
+  }
+
+  /**
+   * Makes each of {@code attendees} busy during {@code when}.
+   */
+  public void add(EpochTimeRange when, Collection<String> attendees) {
+    if (when == null || attendees == null) {
+      throw new IllegalArgumentException("when and attendees cannot be null");
+    }
+
+    lock.writeLock().lock();
+    try {
+      changes++;
+      for (String attendee : attendees) {
+        busy.add(attendee, when.start(), when.end());
+        versions.put(attendee, changes);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes an event previously added to the index. Returns {@code false} if no attendee of the
+   * event had it indexed.
+   */
+  public boolean remove(Event event) {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+
+    return remove(EpochTimeRange.of(event.getWhen()), event.getAttendees());
+  }
+
+  /**
+   * Undoes a call to {@link #add(EpochTimeRange, Collection)}. Returns {@code false} if none of
+   * {@code attendees} was busy during exactly {@code when}.
+   */
+  public boolean remove(EpochTimeRange when, Collection<String> attendees) {
+    if (when == null || attendees == null) {
+      throw new IllegalArgumentException("when and attendees cannot be null");
+    }
+
+    lock.writeLock().lock();
+    try {
+      changes++;
+      boolean removed = false;
+      for (String attendee : attendees) {
+        if (busy.remove(attendee, when.start(), when.end())) {
+          versions.put(attendee, changes);
+          removed = true;
+        }
+      }
+
+      return removed;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Moves an event previously added to the index to {@code when}. Returns {@code false}, changing
+   * nothing, if no attendee of the event had it indexed.
+   */
+  public boolean move(Event event, TimeRange when) {
+    if (event == null || when == null) {
+      throw new IllegalArgumentException("event and when cannot be null");
+    }
+
+    return move(EpochTimeRange.of(event.getWhen()), EpochTimeRange.of(when),
+        event.getAttendees());
+  }
+
+  /**
+   * Moves the busy time {@code from} of each of {@code attendees} to {@code to}, as one change.
+   * Attendees that were not busy during exactly {@code from} are left alone. Returns
+   * {@code false}, changing nothing, if none of {@code attendees} was busy during exactly
+   * {@code from}.
+   */
+  public boolean move(EpochTimeRange from, EpochTimeRange to, Collection<String> attendees) {
+    if (from == null || to == null || attendees == null) {
+      throw new IllegalArgumentException("from, to and attendees cannot be null");
+    }
+
+    lock.writeLock().lock();
+    try {
+      changes++;
+      boolean moved = false;
+      for (String attendee : attendees) {
+        if (busy.remove(attendee, from.start(), from.end())) {
+          busy.add(attendee, to.start(), to.end());
+          versions.put(attendee, changes);
+          moved = true;
+        }
+      }
+
+      return moved;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the times {@code attendee} is busy on the first day of the epoch, where events are
+   * placed, merged and in chronological order.
+   */
+  public List<TimeRange> getBusyTimes(String attendee) {
+    List<EpochTimeRange> epochTimes = getBusyTimes(attendee, EpochTimeRange.ofDays(0, 1));
+    List<TimeRange> busyTimes = new ArrayList<>(epochTimes.size());
+
+    for (EpochTimeRange busy : epochTimes) {
+      busyTimes.add(TimeRange.fromStartEnd((int) busy.start(), (int) busy.end(), false));
+    }
+
+    return busyTimes;
+  }
+
+  /**
+   * Returns the times {@code attendee} is busy within {@code horizon}, merged, clipped to the
+   * horizon and in chronological order.
+   */
+  public List<EpochTimeRange> getBusyTimes(String attendee, EpochTimeRange horizon) {
+    List<EpochTimeRange> busyTimes = new ArrayList<>();
+    visitBusy(attendee, horizon.start(), horizon.end(),
+        (start, end) -> busyTimes.add(EpochTimeRange.fromStartEnd(start, end)));
+
+    return busyTimes;
+  }
+
+  /**
+   * Visits the busy times of {@code attendee} within {@code [from, to)}, merged, clipped to the
+   * range and in chronological order. The visitor runs while the index is locked for reading, so it
+   * must not change the index.
+   */
+  void visitBusy(String attendee, long from, long to, FreeBusyCache.BusyVisitor visitor) {
+    lock.readLock().lock();
+    try {
+      busy.visitBusy(attendee, from, to, visitor);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Runs {@code search} on a cursor over the busy times of each of {@code attendees} within
+   * {@code [from, to)}, as for {@link #visitBusy}, and returns its result. The cursors read the
+   * index in place, so a search that stops early never reads the rest of the range. The search
+   * runs while the index is locked for reading, so it must not change the index, and the cursors
+   * must not outlive it.
+   */
+  <T> T searchBusy(List<String> attendees, long from, long to,
+      Function<FreeBusyCache.BusyCursor[], T> search) {
+    lock.readLock().lock();
+    try {
+      FreeBusyCache.BusyCursor[] cursors = new FreeBusyCache.BusyCursor[attendees.size()];
+      for (int i = 0; i < cursors.length; i++) {
+        cursors[i] = busy.cursor(attendees.get(i), from, to);
+      }
+
+      return search.apply(cursors);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the version of the busy times of each of {@code attendees}. A version changes whenever
+   * the attendee's busy times may have, and is zero for someone whose busy times have not changed
+   * since the index was created or opened.
+   */
+  long[] versions(String[] attendees) {
+    long[] found = new long[attendees.length];
+    lock.readLock().lock();
+    try {
+      for (int i = 0; i < attendees.length; i++) {
+        Long version = versions.get(attendees[i]);
+        found[i] = (version == null) ? 0 : version;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    return found;
+  }
+}
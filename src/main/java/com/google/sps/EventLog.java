@@ -0,0 +1,622 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Makes the changes to an {@code EventStore} durable by writing each one to an append-only log
+ * before applying it. Writers that arrive while the log is being synced are committed together by
+ * the next sync, so a busy log pays for one sync per batch rather than one per change. Changes are
+ * applied to the store in log order once they are on disk, so the store never shows a change that
+ * could be lost.
+ *
+ * <p>When the log grows past a threshold, a background thread folds it into a snapshot: a new log
+ * is started, the store's events at that point are written as an {@code EventFile}, and the older
+ * log and snapshot are deleted. Files carry a generation: {@code snapshot-g.events} holds the
+ * events as of the start of {@code log-g.wal}, and opening the directory loads the newest snapshot
+ * and replays the logs from its generation on. A log whose tail was torn by a crash is truncated
+ * after its last whole record.
+ *
+ * <p>The log is safe to share between threads.
+ */
+public final class EventLog implements Closeable {
+  // Logs larger than this are folded into a snapshot.
+  private static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+  private static final Pattern LOG_NAME = Pattern.compile("log-(\\d+)\\.wal");
+  private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.events");
+
+  private static final byte ADD = 1;
+  private static final byte REMOVE = 2;
+  private static final byte MOVE = 3;
+
+  // Each record is framed by its length and a checksum of its bytes.
+  private static final int FRAME_HEADER_BYTES = 2 * Integer.BYTES;
+
+  private final Path directory;
+  private final EventStore store;
+  private final long compactBytes;
+  private final ExecutorService compactor;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition synced = lock.newCondition();
+
+  // Guarded by lock.
+  private FileChannel log;
+  private long generation;
+  private long logBytes;
+  private List<Pending> pending = new ArrayList<>();
+  private boolean syncing;
+  private boolean compacting;
+  private IOException failure;
+  private boolean closing;
+  private boolean closed;
+
+  // Why the last background compaction failed, until one succeeds. Guarded by lock.
+  private IOException compactionFailure;
+
+  // Held for the whole of a compaction, so that compactions run one at a time.
+  private final Object compaction = new Object();
+
+  private EventLog(Path directory, EventStore store, long compactBytes) {
+    this.directory = directory;
+    this.store = store;
+    this.compactBytes = compactBytes;
+    this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "event-log-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Opens the log kept in {@code directory}, creating the directory if needed, and replays the
+   * newest snapshot and the logs after it into {@code store}, which should be empty.
+   */
+  public static EventLog open(Path directory, EventStore store) throws IOException {
+    return open(directory, store, DEFAULT_COMPACT_BYTES);
+  }
+
+  /**
+   * Same as {@link #open(Path, EventStore)}, compacting once the log reaches
+   * {@code compactBytes} bytes.
+   */
+  static EventLog open(Path directory, EventStore store, long compactBytes) throws IOException {
+    if (directory == null || store == null) {
+      throw new IllegalArgumentException("directory and store cannot be null");
+    }
+    if (compactBytes <= 0) {
+      throw new IllegalArgumentException("compactBytes must be positive");
+    }
+
+    Files.createDirectories(directory);
+    EventLog eventLog = new EventLog(directory, store, compactBytes);
+    eventLog.recover();
+    return eventLog;
+  }
+
+  /**
+   * Adds {@code event} to the store once the addition is on disk.
+   */
+  public void add(Event event) throws IOException {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+
+    commit(new Record(ADD, event, null));
+  }
+
+  /**
+   * Removes one copy of {@code event} from the store once the removal is on disk. Returns
+   * {@code false} if the store did not hold it.
+   */
+  public boolean remove(Event event) throws IOException {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+
+    return commit(new Record(REMOVE, event, null));
+  }
+
+  /**
+   * Replaces one copy of {@code event} in the store with the same event at {@code when}, once the
+   * move is on disk. Returns {@code false}, changing nothing, if the store did not hold it.
+   */
+  public boolean move(Event event, TimeRange when) throws IOException {
+    if (event == null || when == null) {
+      throw new IllegalArgumentException("event and when cannot be null");
+    }
+
+    return commit(new Record(MOVE, event, when));
+  }
+
+  /**
+   * Folds the log into a new snapshot now, and waits for it to be written.
+   */
+  public void compact() throws IOException {
+    synchronized (compaction) {
+      List<Event> events;
+      long snapshotGeneration;
+
+      lock.lock();
+      try {
+        checkWritable();
+        while (syncing) {
+          synced.awaitUninterruptibly();
+        }
+
+        // Nothing is being synced and nothing can be applied while the lock is held, so the
+        // store holds exactly the changes of the logs before the new one.
+        FileChannel next = openLog(generation + 1);
+        log.close();
+        log = next;
+        generation++;
+        logBytes = 0;
+        snapshotGeneration = generation;
+        events = store.getEvents();
+      } finally {
+        lock.unlock();
+      }
+
+      EventFile.write(snapshotPath(snapshotGeneration), events);
+      deleteBefore(snapshotGeneration);
+    }
+  }
+
+  /**
+   * Waits for a running compaction, then closes the log. Changes that are still being committed
+   * fail.
+   *
+   * @throws IOException if the log cannot be closed, or if the last background compaction failed,
+   *     in which case the log is closed but keeps every change
+   */
+  @Override
+  public void close() throws IOException {
+    // Once closing is set, no writer hands the compactor any more work, so it can be shut down.
+    lock.lock();
+    try {
+      closing = true;
+    } finally {
+      lock.unlock();
+    }
+
+    compactor.shutdown();
+    try {
+      compactor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    lock.lock();
+    try {
+      while (syncing) {
+        synced.awaitUninterruptibly();
+      }
+      closed = true;
+      log.close();
+
+      if (compactionFailure != null) {
+        throw new IOException("background compaction failed", compactionFailure);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the generation of the current log.
+   */
+  long generation() {
+    lock.lock();
+    try {
+      return generation;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Appends {@code record} to the log and waits until it is synced and applied. The first writer
+   * to find no sync running becomes the leader: it takes every record waiting at that point,
+   * writes and syncs them outside the lock, applies them to the store in order and wakes their
+   * writers. Writers arriving meanwhile queue up for the leader of the next batch.
+   */
+  private boolean commit(Record record) throws IOException {
+    Pending mine = new Pending(record.frame(), record);
+
+    lock.lock();
+    try {
+      checkWritable();
+      pending.add(mine);
+
+      while (!mine.done) {
+        if (syncing) {
+          synced.awaitUninterruptibly();
+          continue;
+        }
+        if (closed || failure != null) {
+          // The log closed or failed while this record waited for the last batch.
+          pending.remove(mine);
+          checkWritable();
+        }
+
+        syncing = true;
+        List<Pending> batch = pending;
+        pending = new ArrayList<>();
+        FileChannel target = log;
+
+        IOException error = null;
+        long written = 0;
+        lock.unlock();
+        try {
+          written = write(target, batch);
+        } catch (IOException e) {
+          error = e;
+        } finally {
+          lock.lock();
+        }
+
+        if (error == null) {
+          logBytes += written;
+          for (Pending each : batch) {
+            each.result = each.record.applyTo(store);
+          }
+        } else {
+          // The log may now end in part of the batch, after which nothing could be replayed.
+          failure = error;
+        }
+
+        for (Pending each : batch) {
+          each.failure = error;
+          each.done = true;
+        }
+        syncing = false;
+        synced.signalAll();
+      }
+
+      if (mine.failure != null) {
+        throw new IOException("event log write failed", mine.failure);
+      }
+
+      if (logBytes >= compactBytes && !compacting && !closing) {
+        compacting = true;
+        compactor.execute(this::compactInBackground);
+      }
+
+      return mine.result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static long write(FileChannel target, List<Pending> batch) throws IOException {
+    ByteBuffer[] frames = new ByteBuffer[batch.size()];
+    long length = 0;
+    for (int i = 0; i < frames.length; i++) {
+      frames[i] = ByteBuffer.wrap(batch.get(i).frame);
+      length += frames[i].remaining();
+    }
+
+    long remaining = length;
+    while (remaining > 0) {
+      remaining -= target.write(frames);
+    }
+    target.force(false);
+
+    return length;
+  }
+
+  private void compactInBackground() {
+    IOException error = null;
+    try {
+      compact();
+    } catch (IOException e) {
+      // The log stays whole, so compaction is tried again once the log grows further, and the
+      // failure is reported by close unless a later compaction succeeds.
+      error = e;
+    } finally {
+      lock.lock();
+      try {
+        compactionFailure = error;
+        compacting = false;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void checkWritable() throws IOException {
+    if (closed) {
+      throw new IOException("event log is closed");
+    }
+    if (failure != null) {
+      throw new IOException("event log failed earlier", failure);
+    }
+  }
+
+  /**
+   * Loads the newest snapshot and replays the logs from its generation on into the store, then
+   * opens the newest log for appending after its last whole record.
+   */
+  private void recover() throws IOException {
+    long snapshotGeneration = -1;
+    List<Long> logGenerations = new ArrayList<>();
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        Matcher snapshot = SNAPSHOT_NAME.matcher(name);
+        Matcher logName = LOG_NAME.matcher(name);
+
+        if (snapshot.matches()) {
+          snapshotGeneration = Math.max(snapshotGeneration, Long.parseLong(snapshot.group(1)));
+        } else if (logName.matches()) {
+          logGenerations.add(Long.parseLong(logName.group(1)));
+        } else if (name.endsWith(".tmp")) {
+          // A snapshot whose compaction did not finish.
+          Files.delete(file);
+        }
+      }
+    }
+
+    if (snapshotGeneration >= 0) {
+      for (Event event : EventFile.open(snapshotPath(snapshotGeneration)).getEvents()) {
+        store.add(event);
+      }
+    }
+
+    generation = Math.max(snapshotGeneration, 0);
+    logGenerations.sort(null);
+    long validBytes = 0;
+    for (long logGeneration : logGenerations) {
+      if (logGeneration >= generation) {
+        generation = logGeneration;
+        validBytes = replay(logPath(logGeneration));
+      }
+    }
+
+    log = openLog(generation);
+    log.truncate(validBytes);
+    log.position(validBytes);
+    logBytes = validBytes;
+
+    // Only what the newest snapshot holds can go. A compaction that switched logs but never wrote
+    // its snapshot leaves the older logs as the only copy of their changes.
+    deleteBefore(Math.max(snapshotGeneration, 0));
+  }
+
+  /**
+   * Applies the whole records of the log at {@code file} to the store, and returns the length of
+   * the log up to the end of the last of them.
+   */
+  private long replay(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      CRC32 crc = new CRC32();
+
+      while (buffer.remaining() >= FRAME_HEADER_BYTES) {
+        int start = buffer.position();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+          return start;
+        }
+
+        ByteBuffer payload = buffer.slice();
+        ((Buffer) payload).limit(length);
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != checksum) {
+          return start;
+        }
+
+        Record record;
+        try {
+          record = Record.decode(payload);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+          return start;
+        }
+
+        record.applyTo(store);
+        ((Buffer) buffer).position(start + FRAME_HEADER_BYTES + length);
+      }
+
+      return buffer.position();
+    }
+  }
+
+  private FileChannel openLog(long logGeneration) throws IOException {
+    FileChannel channel = FileChannel.open(logPath(logGeneration), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE);
+    channel.position(channel.size());
+    return channel;
+  }
+
+  /**
+   * Deletes the logs and snapshots of generations before {@code current}, which the snapshot of
+   * {@code current} replaces.
+   */
+  private void deleteBefore(long current) throws IOException {
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        Matcher snapshot = SNAPSHOT_NAME.matcher(name);
+        Matcher logName = LOG_NAME.matcher(name);
+
+        if ((snapshot.matches() && Long.parseLong(snapshot.group(1)) < current)
+            || (logName.matches() && Long.parseLong(logName.group(1)) < current)) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  private Path logPath(long logGeneration) {
+    return directory.resolve("log-" + logGeneration + ".wal");
+  }
+
+  private Path snapshotPath(long snapshotGeneration) {
+    return directory.resolve("snapshot-" + snapshotGeneration + ".events");
+  }
+
+  /**
+   * A record waiting to be committed, and the outcome handed back to its writer.
+   */
+  private static final class Pending {
+    final byte[] frame;
+    final Record record;
+
+    boolean done;
+    boolean result;
+    IOException failure;
+
+    Pending(byte[] frame, Record record) {
+      this.frame = frame;
+      this.record = record;
+    }
+  }
+
+  /**
+   * One change to the store. A record is the event it changes, and the new time of a move.
+   */
+  private static final class Record {
+    final byte type;
+    final Event event;
+    final TimeRange when;
+
+    Record(byte type, Event event, TimeRange when) {
+      this.type = type;
+      this.event = event;
+      this.when = when;
+    }
+
+    boolean applyTo(EventStore store) {
+      switch (type) {
+        case ADD:
+          store.add(event);
+          return true;
+        case REMOVE:
+          return store.remove(event);
+        default:
+          if (!store.remove(event)) {
+            return false;
+          }
+          store.add(new Event(event.getTitle(), when, event.getAttendees()));
+          return true;
+      }
+    }
+
+    /**
+     * Returns the record framed by its length and checksum.
+     */
+    byte[] frame() {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+      try (DataOutputStream out = new DataOutputStream(bytes)) {
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(type);
+        writeString(out, event.getTitle());
+        out.writeInt(event.getWhen().start());
+        out.writeInt(event.getWhen().duration());
+        out.writeInt(event.getAttendees().size());
+        for (String attendee : event.getAttendees()) {
+          writeString(out, attendee);
+        }
+        if (type == MOVE) {
+          out.writeInt(when.start());
+          out.writeInt(when.duration());
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+
+      byte[] frame = bytes.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(frame, FRAME_HEADER_BYTES, frame.length - FRAME_HEADER_BYTES);
+      ByteBuffer.wrap(frame).putInt(frame.length - FRAME_HEADER_BYTES).putInt((int) crc.getValue());
+      return frame;
+    }
+
+    /**
+     * Reads the record from {@code payload}.
+     *
+     * @throws IllegalArgumentException if the payload is not a record
+     */
+    static Record decode(ByteBuffer payload) {
+      byte type = payload.get();
+      if (type != ADD && type != REMOVE && type != MOVE) {
+        throw new IllegalArgumentException("unknown record type " + type);
+      }
+
+      String title = readString(payload);
+      TimeRange when = TimeRange.fromStartDuration(payload.getInt(), payload.getInt());
+      int attendeeCount = payload.getInt();
+      if (attendeeCount < 0 || attendeeCount > payload.remaining()) {
+        throw new IllegalArgumentException("bad attendee count " + attendeeCount);
+      }
+
+      List<String> attendees = new ArrayList<>(attendeeCount);
+      for (int i = 0; i < attendeeCount; i++) {
+        attendees.add(readString(payload));
+      }
+
+      TimeRange moved = (type == MOVE)
+          ? TimeRange.fromStartDuration(payload.getInt(), payload.getInt()) : null;
+      return new Record(type, new Event(title, when, attendees), moved);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+      byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(encoded.length);
+      out.write(encoded);
+    }
+
+    private static String readString(ByteBuffer payload) {
+      int length = payload.getInt();
+      if (length < 0 || length > payload.remaining()) {
+        throw new IllegalArgumentException("bad string length " + length);
+      }
+
+      byte[] encoded = new byte[length];
+      payload.get(encoded);
+      return new String(encoded, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,158 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory store of events that answers range queries without scanning every event. Events are
+ * kept in interval trees, one over all events and one per attendee, so finding the events that
+ * overlap a range takes O(log n + k) for k matching events. Events are placed on the first day of
+ * the epoch, as in {@code EventIndex}. The store is safe to share between threads.
+ */
+public final class EventStore {
+  private final IntervalTree<Event> events = new IntervalTree<>();
+  private final Map<String, IntervalTree<Event>> attendees = new HashMap<>();
+
+  // Bumped on every change so that readers can tell whether what they derived is still current.
+  private long version;
+
+  /**
+   * Creates an empty store.
+   */
+  public EventStore() {}
+
+  /**
+   * Creates a store holding every event of {@code events}.
+   *
+   * @param events The events to store. Must be non-null.
+   */
+  public EventStore(Collection<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null");
+    }
+
+    for (Event event : events) {
+      add(event);
+    }
+  }
+
+  /**
+   * Adds an event. The same event may be added more than once.
+   */
+  public synchronized void add(Event event) {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+
+    TimeRange when = event.getWhen();
+    events.add(when.start(), when.end(), event);
+
+    for (String attendee : event.getAttendees()) {
+      IntervalTree<Event> attendeeEvents = attendees.get(attendee);
+      if (attendeeEvents == null) {
+        attendeeEvents = new IntervalTree<>();
+        attendees.put(attendee, attendeeEvents);
+      }
+
+      attendeeEvents.add(when.start(), when.end(), event);
+    }
+
+    version++;
+  }
+
+  /**
+   * Removes one copy of an event. Returns {@code false} if the store did not hold it.
+   */
+  public synchronized boolean remove(Event event) {
+    if (event == null) {
+      throw new IllegalArgumentException("event cannot be null");
+    }
+
+    TimeRange when = event.getWhen();
+    if (!events.remove(when.start(), when.end(), event)) {
+      return false;
+    }
+
+    for (String attendee : event.getAttendees()) {
+      IntervalTree<Event> attendeeEvents = attendees.get(attendee);
+      attendeeEvents.remove(when.start(), when.end(), event);
+
+      if (attendeeEvents.size() == 0) {
+        attendees.remove(attendee);
+      }
+    }
+
+    version++;
+    return true;
+  }
+
+  /**
+   * Returns the number of events in the store.
+   */
+  public synchronized int size() {
+    return events.size();
+  }
+
+  /**
+   * Returns a number that changes whenever an event is added or removed.
+   */
+  public synchronized long version() {
+    return version;
+  }
+
+  /**
+   * Returns every event, in order of start time.
+   */
+  public synchronized List<Event> getEvents() {
+    List<Event> found = new ArrayList<>(events.size());
+    events.visitAll((start, end, event) -> found.add(event));
+    return found;
+  }
+
+  /**
+   * Returns the events that overlap {@code range}, in order of start time.
+   */
+  public synchronized List<Event> getEvents(TimeRange range) {
+    List<Event> found = new ArrayList<>();
+    events.visitOverlapping(range.start(), range.end(), (start, end, event) -> found.add(event));
+    return found;
+  }
+
+  /**
+   * Returns the events of {@code attendee} that overlap {@code range}, in order of start time.
+   */
+  public synchronized List<Event> getEvents(String attendee, TimeRange range) {
+    List<Event> found = new ArrayList<>();
+    visitBusy(attendee, range.start(), range.end(), (start, end, event) -> found.add(event));
+    return found;
+  }
+
+  /**
+   * Visits the events of {@code attendee} that overlap {@code [from, to)}, in order of start time.
+   * The visitor runs while the store is locked, so it must not call back into the store.
+   */
+  synchronized void visitBusy(String attendee, long from, long to,
+      IntervalTree.Visitor<? super Event> visitor) {
+    IntervalTree<Event> attendeeEvents = attendees.get(attendee);
+    if (attendeeEvents != null) {
+      attendeeEvents.visitOverlapping(from, to, visitor);
+    }
+  }
+}
@@ -14,324 +14,1796 @@
 
 package com.google.sps;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.PriorityQueue;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Finds the times of day at which a meeting can take place. The query only
+ * holds its settings: all working data lives in a {@code QueryContext}
+ * created for each call, so a single instance can be shared by any number of
+ * threads.
+ */
 public final class FindMeetingQuery {
 
-    ArrayList<EventPoint> pointList;
-    ArrayList<Range> partitionedRanges;
-    HashMap<String, Integer> optionalAttendees;
-    HashMap<String, Integer> mandatoryAttendees;
-    PriorityQueue<Range> rangeQueue;
+    // Sweep points are packed into longs so that they sort with a primitive
+    // sort: the time in the high 32 bits, then the point type, then the
+    // attendee slot. Slot 0 is the union of the mandatory attendees and
+    // optional attendee id i uses slot i + 1.
+    private static final int POINT_TYPE_START = 0;
+    private static final int POINT_TYPE_END = 1;
+    private static final int TYPE_SHIFT = 31;
+    private static final long SLOT_MASK = (1L << TYPE_SHIFT) - 1;
+
+    // Points are bucketed by minute instead of comparison sorted once there
+    // is at least one point per this many minutes of the swept domain.
+    private static final int COUNTING_SORT_MINUTES_PER_POINT = 8;
+
+    // Horizon of the single-day queries. Events are placed on the first day
+    // of the epoch, so its minutes are the minutes of TimeRange.
+    private static final EpochTimeRange DAY = EpochTimeRange.ofDays(0, 1);
+
+    // Sweeps of fewer points than this per chunk are not split, as handing
+    // the chunks to other threads would cost more than sweeping them.
+    private static final int MIN_POINTS_PER_CHUNK = 1 << 15;
+
+    // Chunks per thread of a parallel sweep, so that a thread that finishes
+    // early can steal the chunks of a busier part of the horizon.
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final ThreadLocal<Scratch> SCRATCH =
+        ThreadLocal.withInitial(Scratch::new);
+
+    // Most chunks a sweep is split into, and fewest points in each chunk.
+    private final int maxChunks;
+    private final int minPointsPerChunk;
+
+    /**
+     * Creates a query that sweeps horizons of many events in parallel on the
+     * common fork/join pool when the pool has more than one thread.
+     */
+    public FindMeetingQuery() {
+        this((ForkJoinPool.getCommonPoolParallelism() > 1)
+                ? ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD
+                : 1,
+            MIN_POINTS_PER_CHUNK);
+    }
 
-    static final Comparator<Range> MAX_ATTENDEE_ORDER =
-        (Range e1, Range e2) ->
-        {
-            if (!e1.mandatoryAvailable && !e2.mandatoryAvailable) {
-                return 0;
+    /**
+     * Creates a query that splits each sweep into at most {@code maxChunks}
+     * chunks of at least {@code minPointsPerChunk} points. A single chunk
+     * sweeps on the calling thread.
+     */
+    FindMeetingQuery(int maxChunks, int minPointsPerChunk) {
+        if (maxChunks <= 0 || minPointsPerChunk <= 0) {
+            throw new IllegalArgumentException(
+                "maxChunks and minPointsPerChunk must be positive");
+        }
+
+        this.maxChunks = maxChunks;
+        this.minPointsPerChunk = minPointsPerChunk;
+    }
+
+    public Collection<TimeRange> query(Collection<Event> events,
+            MeetingRequest request) {
+        return answer(request, context -> context.preprocessEvents(events),
+            context -> context.processTimeRanges(request.getDuration()));
+    }
+
+    /**
+     * Answers {@code request} from the busy intervals in {@code index}. Only
+     * the intervals of the attendees named by the request are read.
+     */
+    public Collection<TimeRange> query(EventIndex index,
+            MeetingRequest request) {
+        return answer(request, context -> context.preprocessIndex(index),
+            context -> context.processTimeRanges(request.getDuration()));
+    }
+
+    /**
+     * Answers {@code request} from the events in {@code store}. Only the
+     * events of the attendees named by the request that overlap the day are
+     * visited.
+     */
+    public Collection<TimeRange> query(EventStore store,
+            MeetingRequest request) {
+        return answer(request, context -> context.preprocessStore(store),
+            context -> context.processTimeRanges(request.getDuration()));
+    }
+
+    /**
+     * Answers {@code request} from the events in {@code file}. Only the
+     * events of the attendees named by the request are read from the file.
+     */
+    public Collection<TimeRange> query(EventFile file,
+            MeetingRequest request) {
+        return answer(request, context -> context.preprocessFile(file),
+            context -> context.processTimeRanges(request.getDuration()));
+    }
+
+    /**
+     * Returns the answer to {@code request} as a stream of slots in start
+     * order. This is a stream view over a computed answer, not a lazy
+     * search: the whole day is swept and every window found before this
+     * returns, because which windows make the answer depends on the most
+     * optional attendees free anywhere in the day. Only the
+     * {@code TimeRange}s are built as the stream reaches them.
+     */
+    public Stream<TimeRange> queryAsStream(Collection<Event> events,
+            MeetingRequest request) {
+        return timeRanges(answer(request,
+            context -> context.preprocessEvents(events),
+            context -> context.windowBounds(request.getDuration())));
+    }
+
+    /**
+     * Same as {@link #queryAsStream(Collection, MeetingRequest)}, reading
+     * busy times from {@code index}.
+     */
+    public Stream<TimeRange> queryAsStream(EventIndex index,
+            MeetingRequest request) {
+        return timeRanges(answer(request,
+            context -> context.preprocessIndex(index),
+            context -> context.windowBounds(request.getDuration())));
+    }
+
+    /**
+     * Same as {@link #queryHorizon}, returning the whole answer as a stream
+     * in start order instead of one page of it. As for
+     * {@link #queryAsStream(EventIndex, MeetingRequest)}, the whole horizon
+     * is swept before this returns; use {@code findEarliest} for a search
+     * that stops at the first slot.
+     */
+    public Stream<EpochTimeRange> queryHorizonAsStream(EventIndex index,
+            MeetingRequest request, EpochTimeRange horizon) {
+        checkHorizon(horizon);
+        int[] bounds = answer(request, horizon,
+            context -> context.preprocessIndex(index),
+            context -> context.windowBounds(request.getDuration()));
+
+        long origin = horizon.start();
+        return IntStream.range(0, bounds.length / 2)
+            .mapToObj(i -> EpochTimeRange.fromStartEnd(origin + bounds[2 * i],
+                origin + bounds[2 * i + 1]));
+    }
+
+    private static Stream<TimeRange> timeRanges(int[] bounds) {
+        return IntStream.range(0, bounds.length / 2)
+            .mapToObj(i -> TimeRange.fromStartEnd(bounds[2 * i],
+                bounds[2 * i + 1], false));
+    }
+
+    /**
+     * Answers {@code request} over {@code horizon}, which may span any number
+     * of days, reading busy times from {@code index}. The windows of the
+     * answer are returned in chronological order, skipping the first
+     * {@code offset} and returning at most {@code limit} of them, so that a
+     * long horizon can be read a page at a time without building every
+     * window it has.
+     */
+    public List<EpochTimeRange> queryHorizon(EventIndex index,
+            MeetingRequest request, EpochTimeRange horizon, int offset,
+            int limit) {
+        checkHorizon(horizon);
+        checkLimit(limit);
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset cannot be negative");
+        }
+
+        return answer(request, horizon,
+            context -> context.preprocessIndex(index),
+            context -> context.horizonWindows(request.getDuration(), offset,
+                limit));
+    }
+
+    /**
+     * Returns the earliest free window of the day, starting no earlier than
+     * {@code notBefore}, in which every mandatory attendee of
+     * {@code request} is free for the requested duration, or nothing if
+     * there is none. Optional attendees are ignored, and as in
+     * {@code query} someone listed as both counts as optional. Unlike
+     * {@code query}, the search stops at the first window that is long
+     * enough.
+     *
+     * @param notBefore A minute of the day, from {@code START_OF_DAY} up to
+     *     and including the end of the day.
+     */
+    public Optional<TimeRange> findEarliest(EventIndex index,
+            MeetingRequest request, int notBefore) {
+        if (notBefore < TimeRange.START_OF_DAY ||
+                notBefore > TimeRange.END_OF_DAY + 1) {
+            throw new IllegalArgumentException(
+                "notBefore must be a minute of the day");
+        }
+
+        return findEarliest(index, request,
+            EpochTimeRange.fromStartEnd(notBefore, DAY.end()))
+            .map(window -> TimeRange.fromStartEnd((int) window.start(),
+                (int) window.end(), false));
+    }
+
+    /**
+     * Same as {@link #findEarliest(EventIndex, MeetingRequest, int)},
+     * searching {@code horizon}.
+     */
+    public Optional<EpochTimeRange> findEarliest(EventIndex index,
+            MeetingRequest request, EpochTimeRange horizon) {
+        if (horizon == null) {
+            throw new IllegalArgumentException("horizon cannot be null");
+        }
+        if (horizon.duration() < 0) {
+            throw new IllegalArgumentException(
+                "horizon cannot end before it starts");
+        }
+
+        Collection<String> optionalAttendees =
+            request.getOptionalAttendees();
+        List<String> attendees = new ArrayList<String>();
+        for (String attendee : request.getAttendees()) {
+            if (!optionalAttendees.contains(attendee)) {
+                attendees.add(attendee);
+            }
+        }
+
+        // The cursors read each attendee's busy times in place, so the
+        // search reads no further into the horizon than the first fit.
+        return Optional.ofNullable(index.searchBusy(attendees,
+            horizon.start(), horizon.end(),
+            busy -> new EarliestSearch(busy).find(horizon.start(),
+                horizon.end(), request.getDuration())));
+    }
+
+    /**
+     * Returns up to {@code limit} slots long enough for {@code request},
+     * best first. Slots are ranked by how many optional attendees can attend
+     * the whole slot, then by earliest start. Each slot is a maximal window
+     * for the optional attendees it is ranked by, and the search stops as
+     * soon as {@code limit} slots are found.
+     */
+    public List<TimeRange> queryTop(Collection<Event> events,
+            MeetingRequest request, int limit) {
+        checkLimit(limit);
+        return answer(request, context -> context.preprocessEvents(events),
+            context -> context.topWindows(request.getDuration(), limit));
+    }
+
+    /**
+     * Same as {@link #queryTop(Collection, MeetingRequest, int)}, reading
+     * busy times from {@code index}.
+     */
+    public List<TimeRange> queryTop(EventIndex index, MeetingRequest request,
+            int limit) {
+        checkLimit(limit);
+        return answer(request, context -> context.preprocessIndex(index),
+            context -> context.topWindows(request.getDuration(), limit));
+    }
+
+    /**
+     * Answers {@code request} for each of {@code durations} instead of the
+     * duration of the request, e.g. for a duration picker. The day is swept
+     * once and every answer is read from the same free windows. Answers are
+     * keyed and ordered by duration.
+     */
+    public SortedMap<Long, Collection<TimeRange>> queryDurations(
+            Collection<Event> events, MeetingRequest request,
+            long... durations) {
+        checkDurations(durations);
+        return answer(request, context -> context.preprocessEvents(events),
+            context -> context.processDurations(durations));
+    }
+
+    /**
+     * Same as {@link #queryDurations(Collection, MeetingRequest, long...)},
+     * reading busy times from {@code index}.
+     */
+    public SortedMap<Long, Collection<TimeRange>> queryDurations(
+            EventIndex index, MeetingRequest request, long... durations) {
+        checkDurations(durations);
+        return answer(request, context -> context.preprocessIndex(index),
+            context -> context.processDurations(durations));
+    }
+
+    /**
+     * Answers every request in {@code requests} against one calendar. The
+     * events are indexed once for the whole batch instead of being scanned
+     * again for each request. Answers are in the order of the requests.
+     */
+    public List<Collection<TimeRange>> queryAll(Collection<Event> events,
+            List<MeetingRequest> requests) {
+        return queryAll(new EventIndex(events), requests);
+    }
+
+    /**
+     * Answers every request in {@code requests} from {@code index}, in
+     * parallel. Answers are in the order of the requests.
+     */
+    public List<Collection<TimeRange>> queryAll(EventIndex index,
+            List<MeetingRequest> requests) {
+        if (requests == null) {
+            throw new IllegalArgumentException("requests cannot be null");
+        }
+
+        // Each worker thread borrows its own scratch arrays, so requests
+        // share nothing but the index. Splitting the batch only pays off
+        // when the common pool really has more than one thread.
+        Stream<MeetingRequest> stream =
+            (ForkJoinPool.getCommonPoolParallelism() > 1)
+                ? requests.parallelStream() : requests.stream();
+        return stream
+            .map(request -> query(index, request))
+            .collect(Collectors.toList());
+    }
+
+    private static void checkDurations(long[] durations) {
+        if (durations == null) {
+            throw new IllegalArgumentException("durations cannot be null");
+        }
+    }
+
+    private static void checkHorizon(EpochTimeRange horizon) {
+        if (horizon == null) {
+            throw new IllegalArgumentException("horizon cannot be null");
+        }
+
+        // The sweep works on int minute offsets from the start of the
+        // horizon, which covers about four thousand years.
+        if (horizon.duration() < 0 || horizon.duration() >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "horizon must last between 0 and " + (Integer.MAX_VALUE - 1) +
+                " minutes");
+        }
+    }
+
+    private static void checkLimit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+    }
+
+    /**
+     * Runs one query over a single day.
+     */
+    private <T> T answer(MeetingRequest request,
+            Consumer<QueryContext> preprocess,
+            Function<QueryContext, T> mode) {
+        return answer(request, DAY, preprocess, mode);
+    }
+
+    /**
+     * Runs one query: collects busy intervals with {@code preprocess}, sweeps
+     * {@code horizon} and then reads the answer with {@code mode}.
+     */
+    private <T> T answer(MeetingRequest request, EpochTimeRange horizon,
+            Consumer<QueryContext> preprocess,
+            Function<QueryContext, T> mode) {
+        QueryContext context = new QueryContext(request, horizon,
+            SCRATCH.get(), maxChunks, minPointsPerChunk);
+        try {
+            preprocess.accept(context);
+            context.run();
+            return mode.apply(context);
+        }
+        finally {
+            context.release();
+        }
+    }
+
+    /**
+     * Finds the first gap of a given length in the busy intervals of several
+     * attendees. Each attendee's intervals are read in order from a cursor,
+     * already merged, so they are merged into one timeline with a min-heap of
+     * attendees keyed by the start of their next interval, and the search
+     * stops reading at the first gap that is long enough.
+     */
+    private static final class EarliestSearch {
+        final FreeBusyCache.BusyCursor[] busy;
+
+        // Heap of the attendees whose cursor is still on an interval,
+        // ordered by the start of that interval.
+        final int[] heap;
+        int heapSize;
+
+        EarliestSearch(FreeBusyCache.BusyCursor[] busy) {
+            this.busy = busy;
+            this.heap = new int[busy.length];
+        }
+
+        /**
+         * Returns the earliest maximal free window within {@code [from, to)}
+         * lasting at least {@code duration} minutes, or null. As in
+         * {@code query}, a window is never empty, even for a meeting of no
+         * length. The cursors must cover {@code [from, to)}.
+         */
+        EpochTimeRange find(long from, long to, long duration) {
+            for (int attendee = 0; attendee < busy.length; attendee++) {
+                if (busy[attendee].valid()) {
+                    heap[heapSize++] = attendee;
+                }
             }
-            else if (!e1.mandatoryAvailable || !e2.mandatoryAvailable) {
-                return (e1.mandatoryAvailable ? -1 : 1);
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+
+            // Everyone is free from candidate on until the next start.
+            long candidate = from;
+
+            while (heapSize > 0) {
+                FreeBusyCache.BusyCursor next = busy[heap[0]];
+                long nextStart = next.start();
+
+                if (nextStart > candidate &&
+                        nextStart - candidate >= duration) {
+                    return EpochTimeRange.fromStartEnd(candidate, nextStart);
+                }
+
+                candidate = Math.max(candidate, next.end());
+
+                next.next();
+                if (!next.valid()) {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(0);
+            }
+
+            return (to > candidate && to - candidate >= duration)
+                ? EpochTimeRange.fromStartEnd(candidate, to) : null;
+        }
+
+        private long nextStart(int attendee) {
+            return busy[attendee].start();
+        }
+
+        private void siftDown(int position) {
+            while (true) {
+                int smallest = position;
+                int left = 2 * position + 1;
+                int right = left + 1;
+
+                if (left < heapSize &&
+                        nextStart(heap[left]) < nextStart(heap[smallest])) {
+                    smallest = left;
+                }
+                if (right < heapSize &&
+                        nextStart(heap[right]) < nextStart(heap[smallest])) {
+                    smallest = right;
+                }
+                if (smallest == position) {
+                    return;
+                }
+
+                int swap = heap[position];
+                heap[position] = heap[smallest];
+                heap[smallest] = swap;
+                position = smallest;
+            }
+        }
+    }
+
+    /**
+     * Working state of a single call to {@code query}. Contexts are never
+     * shared between calls; their arrays are borrowed from the calling
+     * thread's {@code Scratch} and handed back by {@code release}.
+     */
+    private static final class QueryContext {
+        // Id given to every mandatory attendee. Optional attendees get dense
+        // ids 0..n-1 which are their bits in a free set.
+        static final int MANDATORY = -1;
+
+        // Free count of a range in which a mandatory attendee is busy.
+        static final int MANDATORY_BUSY = -1;
+
+        final MeetingRequest request;
+        final Scratch scratch;
+        final int maxChunks;
+        final int minPointsPerChunk;
+
+        // The swept horizon. Busy intervals are clipped to it and all times
+        // below are int minute offsets from its start.
+        final long origin;
+        final int span;
+
+        // Number of optional attendees and of long words in each free set.
+        final int optionalCount;
+        final int words;
+
+        // Busy intervals gathered before the sweep, as parallel arrays of
+        // attendee slot, start offset and end offset.
+        int[] busySlots;
+        int[] busyStarts;
+        int[] busyEnds;
+        int busyCount;
+
+        long[] points;
+        int pointCount;
+
+        // Whether addSweepPoints already left the points in sorted order.
+        boolean pointsSorted;
+
+        // Range i covers [rangeBounds[i], rangeBounds[i + 1]). freeCounts
+        // holds its number of free optional attendees, or MANDATORY_BUSY.
+        int rangeCount;
+        int[] rangeBounds;
+        int[] freeCounts;
+
+        // Free optional attendee sets of all ranges, packed one after the
+        // other; the set of range i starts at word i * words.
+        long[] freeSets;
+
+        // For each range, the indexes of the first and last ranges of the
+        // maximal window around it in which every range is mandatory
+        // available and has all of its free attendees free. Only computed
+        // by the modes that read every window.
+        int[] leftReach;
+        int[] rightReach;
+        boolean reachComputed;
+
+        // Available ranges ordered by orderByFreeCount, sorted on first use
+        // so that several answers read from one sweep share the sort.
+        long[] order;
+        int orderCount = -1;
+
+        // Windows of the answer as (first range, last range) pairs.
+        long[] windows;
+
+        QueryContext(MeetingRequest request, EpochTimeRange horizon,
+                Scratch scratch, int maxChunks, int minPointsPerChunk) {
+            this.request = request;
+            this.scratch = scratch;
+            this.maxChunks = maxChunks;
+            this.minPointsPerChunk = minPointsPerChunk;
+            this.origin = horizon.start();
+            this.span = (int) horizon.duration();
+
+            optionalCount = request.getOptionalAttendees().size();
+            words = (optionalCount + Long.SIZE - 1) / Long.SIZE;
+
+            busySlots = scratch.busySlots;
+            busyStarts = scratch.busyStarts;
+            busyEnds = scratch.busyEnds;
+            points = scratch.points;
+        }
+
+        void run() {
+            addSweepPoints();
+            sweep();
+        }
+
+        /**
+         * Hands the arrays of this context back to the thread's scratch so
+         * the next query on this thread can reuse them.
+         */
+        void release() {
+            // Only the arrays that may have been regrown after they were
+            // borrowed need to be written back.
+            scratch.busySlots = busySlots;
+            scratch.busyStarts = busyStarts;
+            scratch.busyEnds = busyEnds;
+            scratch.points = points;
+            scratch.trim();
+        }
+
+        /**
+         * Splits the horizon into ranges at every sweep point and records,
+         * for each range, whether the mandatory attendees are free and which
+         * optional attendees are free.
+         */
+        private void sweep() {
+            int endOfSweep = span;
+            boolean parallel = maxChunks > 1 &&
+                pointCount >= 2 * minPointsPerChunk;
+
+            if (pointsSorted) {
+                // Nothing to sort.
+            }
+            else if (isDense(pointCount)) {
+                countingSortPoints(0, endOfSweep);
+            }
+            else if (parallel) {
+                Arrays.parallelSort(points, 0, pointCount);
             }
             else {
-                return Integer.compare(e2.attendees.size(),
-                    e1.attendees.size());
+                Arrays.sort(points, 0, pointCount);
             }
-        };
 
-    static final Comparator<EventPoint> CHRONOLOGICAL_ORDER =
-        (EventPoint e1, EventPoint e2) ->
-        { return Long.compare(e1.time, e2.time); };
+            // Every range starts at a distinct minute, so there can be no more
+            // ranges than minutes however many points there are.
+            int maxRanges = Math.min(pointCount + 1, endOfSweep);
 
-    public Collection<TimeRange> query(Collection<Event> events,
-            MeetingRequest request) {
-        pointList = new ArrayList<EventPoint>();
-        partitionedRanges = new ArrayList<Range>();
-        rangeQueue = new PriorityQueue<Range>(MAX_ATTENDEE_ORDER);
+            rangeBounds = scratch.rangeBounds =
+                Scratch.ints(scratch.rangeBounds, maxRanges + 1);
+            freeCounts = scratch.freeCounts =
+                Scratch.ints(scratch.freeCounts, maxRanges);
+            freeSets = scratch.freeSets =
+                Scratch.longs(scratch.freeSets, maxRanges * words);
 
-        preprocessEvents(events, request.getAttendees(),
-            request.getOptionalAttendees());
+            int limit = firstPointAt(endOfSweep);
 
-        initializeHashmap(request.getAttendees(),
-            request.getOptionalAttendees());
+            if (parallel) {
+                rangeCount = sweepChunks(limit, endOfSweep);
+            }
+            else {
+                int[] optionalBusy = scratch.optionalBusy =
+                    Scratch.ints(scratch.optionalBusy, optionalCount);
+                Arrays.fill(optionalBusy, 0, optionalCount, 0);
+                long[] busyOptional = scratch.busyOptional =
+                    Scratch.longs(scratch.busyOptional, words);
+                Arrays.fill(busyOptional, 0, words, 0L);
+
+                rangeCount = new SweepChunk(0, limit, 0, endOfSweep,
+                    optionalBusy, busyOptional).sweep(0);
+            }
 
-        EventPoint previousPoint = new EventPoint(TimeRange.START_OF_DAY,
-            EventPoint.POINT_TYPE_START);
+            rangeBounds[rangeCount] = endOfSweep;
+        }
 
-        for (int i = 0; i < pointList.size(); i++) {
-            EventPoint currentPoint = pointList.get(i);
+        /**
+         * Returns whether {@code count} points are dense enough in the
+         * horizon for them to be bucketed by minute.
+         */
+        private boolean isDense(int count) {
+            return (long) count * COUNTING_SORT_MINUTES_PER_POINT >= span;
+        }
 
-            boolean addToMap = false;
-            if (currentPoint.pointType == EventPoint.POINT_TYPE_START) {
-                addToMap = true;
+        /**
+         * Returns the index of the first sorted point at or after
+         * {@code time}, or {@code pointCount} if there is none.
+         */
+        private int firstPointAt(int time) {
+            int low = 0;
+            int high = pointCount;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if ((int) (points[middle] >> Integer.SIZE) < time) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
             }
-            else if (currentPoint.pointType == EventPoint.POINT_TYPE_END) {
-                addToMap = false;
+
+            return low;
+        }
+
+        /**
+         * Sweeps the first {@code limit} sorted points in chunks on the
+         * common fork/join pool and returns the number of ranges. Chunks
+         * only end where the time changes, so every range lies within one
+         * chunk: a first pass counts the ranges of each chunk and the net
+         * change of its counters, which give each chunk the index of its
+         * first range and its counters on entry, and a second pass sweeps
+         * the chunks straight into their place in the range arrays.
+         */
+        private int sweepChunks(int limit, int endOfSweep) {
+            int[] firstPoints = chunkBounds(limit);
+            SweepChunk[] chunks = new SweepChunk[firstPoints.length - 1];
+
+            for (int k = 0; k < chunks.length; k++) {
+                int startTime = (k == 0) ? 0 : timeOf(firstPoints[k]);
+                int endTime = (k == chunks.length - 1)
+                    ? endOfSweep : timeOf(firstPoints[k + 1]);
+                chunks[k] = new SweepChunk(firstPoints[k], firstPoints[k + 1],
+                    startTime, endTime, new int[optionalCount],
+                    new long[words]);
+            }
+
+            int[][] changes = new int[chunks.length][];
+            IntStream.range(0, chunks.length).parallel()
+                .forEach(k -> changes[k] = chunks[k].scan());
+
+            // Counters on entry to each chunk, mandatory slot first.
+            int[] counters = new int[optionalCount + 1];
+            int[] firstRanges = new int[chunks.length + 1];
+            for (int k = 0; k < chunks.length; k++) {
+                chunks[k].enter(counters);
+                for (int slot = 0; slot <= optionalCount; slot++) {
+                    counters[slot] += changes[k][slot];
+                }
+                firstRanges[k + 1] = firstRanges[k] + chunks[k].rangeTotal;
+            }
+
+            IntStream.range(0, chunks.length).parallel()
+                .forEach(k -> chunks[k].sweep(firstRanges[k]));
+
+            return firstRanges[chunks.length];
+        }
+
+        /**
+         * Splits the first {@code limit} sorted points into chunks of about
+         * equal size and returns the index of the first point of each, then
+         * {@code limit}. Each split is moved forward past the points at the
+         * same time as the point before it.
+         */
+        private int[] chunkBounds(int limit) {
+            int chunkCount = Math.max(1,
+                Math.min(maxChunks, limit / minPointsPerChunk));
+            int[] bounds = new int[chunkCount + 1];
+            int count = 1;
+
+            for (int k = 1; k < chunkCount; k++) {
+                int split = (int) ((long) limit * k / chunkCount);
+                split = Math.max(split, bounds[count - 1] + 1);
+
+                while (split < limit && timeOf(split) == timeOf(split - 1)) {
+                    split++;
+                }
+                if (split < limit) {
+                    bounds[count++] = split;
+                }
             }
 
-            TimeRange currentRange = TimeRange.fromStartEnd(
-                previousPoint.time, currentPoint.time, false);
+            bounds[count++] = limit;
+            return Arrays.copyOf(bounds, count);
+        }
 
-            if (currentRange.duration() > 0) {
-                Collection<String> freeAttendees = getFreeAttendees(
-                    request.getAttendees(), request.getOptionalAttendees());
-                boolean mandatoryAvailable = !(freeAttendees == null);
+        private int timeOf(int point) {
+            return (int) (points[point] >> Integer.SIZE);
+        }
 
-                Range range = new Range(mandatoryAvailable, currentRange,
-                    freeAttendees, partitionedRanges.size());
-                partitionedRanges.add(range);
-                rangeQueue.add(range);
+        /**
+         * Sorts the points by time in O(points + minutes) with one bucket
+         * per minute of {@code [first, last]}. Points outside the domain go
+         * to the first or last bucket, which the sweep treats the same way
+         * as it would sorted points. The order within a minute is
+         * irrelevant to the sweep.
+         */
+        private void countingSortPoints(int first, int last) {
+            int bucketCount = last - first + 1;
+            int[] buckets = scratch.buckets =
+                Scratch.ints(scratch.buckets, bucketCount + 1);
+            Arrays.fill(buckets, 0, bucketCount + 1, 0);
+
+            for (int i = 0; i < pointCount; i++) {
+                buckets[bucket(points[i], first, last) + 1]++;
+            }
+            for (int b = 0; b < bucketCount; b++) {
+                buckets[b + 1] += buckets[b];
             }
 
-            if (currentPoint.event == null) {
-                break;
+            long[] sorted = Scratch.longs(scratch.sortedPoints, pointCount);
+            for (int i = 0; i < pointCount; i++) {
+                sorted[buckets[bucket(points[i], first, last)]++] = points[i];
             }
 
-            updateAttendeeCounter(currentPoint.event, addToMap);
-            previousPoint = currentPoint;
+            scratch.sortedPoints = points;
+            points = sorted;
         }
 
-        ArrayList<TimeRange> finalList =
-            processTimeRanges(request.getDuration());
-        if (finalList == null) {
-            return (new ArrayList<TimeRange>());
+        private static int bucket(long point, int first, int last) {
+            int time = (int) (point >> Integer.SIZE);
+            return Math.min(Math.max(time, first), last) - first;
         }
-        finalList.sort(TimeRange.ORDER_BY_START);
 
-        List<TimeRange> removeDuplicates = new ArrayList<TimeRange>();
+        Collection<TimeRange> processTimeRanges(long duration) {
+            int windowCount = collectWindows(duration);
+            List<TimeRange> answer = new ArrayList<TimeRange>(windowCount);
 
-        TimeRange lastAdded = null;
-        for (TimeRange timeRange : finalList) {
-            if (!timeRange.equals(lastAdded)) {
-                removeDuplicates.add(timeRange);
-                lastAdded = timeRange;
+            for (int i = 0; i < windowCount; i++) {
+                answer.add(TimeRange.fromStartEnd(windowStart(windows[i]),
+                    windowEnd(windows[i]), false));
             }
+
+            return answer;
         }
 
-        return removeDuplicates;
-    }
+        /**
+         * Returns at most {@code limit} windows of the answer for
+         * {@code duration} as absolute times, after skipping the first
+         * {@code offset} of them.
+         */
+        List<EpochTimeRange> horizonWindows(long duration, int offset,
+                int limit) {
+            int windowCount = collectWindows(duration);
+            int to = (int) Math.min(windowCount, (long) offset + limit);
+            List<EpochTimeRange> answer =
+                new ArrayList<EpochTimeRange>(Math.max(0, to - offset));
+
+            for (int i = offset; i < to; i++) {
+                answer.add(EpochTimeRange.fromStartEnd(
+                    origin + windowStart(windows[i]),
+                    origin + windowEnd(windows[i])));
+            }
 
-    private ArrayList<TimeRange> processTimeRanges(long duration) {
+            return answer;
+        }
 
-        ArrayList<TimeRange> returnRange = new ArrayList<TimeRange>();
-        Collection<String> workingAttendeeList = null;
+        /**
+         * Returns the windows of the answer for {@code duration} as start
+         * and end offsets from the start of the horizon, two per window, in
+         * chronological order. The array is owned by the caller, so it
+         * outlives this context.
+         */
+        int[] windowBounds(long duration) {
+            int windowCount = collectWindows(duration);
+            int[] bounds = new int[2 * windowCount];
+
+            for (int i = 0; i < windowCount; i++) {
+                bounds[2 * i] = windowStart(windows[i]);
+                bounds[2 * i + 1] = windowEnd(windows[i]);
+            }
+
+            return bounds;
+        }
+
+        private int windowStart(long window) {
+            return rangeBounds[(int) (window >>> Integer.SIZE)];
+        }
 
-        while (!rangeQueue.isEmpty()) {
-            Range currentRange = rangeQueue.poll();
+        private int windowEnd(long window) {
+            return rangeBounds[(int) window + 1];
+        }
 
-            if (!currentRange.mandatoryAvailable) {
-                return null;
+        /**
+         * Fills {@code windows} with the distinct windows of the answer for
+         * {@code duration}, as (first range, last range) pairs in
+         * chronological order, and returns how many there are.
+         */
+        private int collectWindows(long duration) {
+            computeReach();
+            orderByFreeCount();
+
+            windows = scratch.windows =
+                Scratch.longs(scratch.windows, orderCount);
+            int windowCount = 0;
+            int workingRange = -1;
+            int position = 0;
+
+            while (position < orderCount) {
+                int currentRange = (int) order[position++];
+
+                if (windowDuration(currentRange) >= duration) {
+                    workingRange = currentRange;
+                    windows[windowCount++] = window(currentRange);
+                    break;
+                }
             }
 
-            int startTime = cascadeLeft(currentRange);
-            int endTime = cascadeRight(currentRange);
+            if (workingRange == -1) {
+                return 0;
+            }
 
-            TimeRange expandedTimeRange = TimeRange.fromStartEnd(startTime,
-                endTime, false);
+            while (position < orderCount) {
+                // Add remaining ranges that fit the working attendees.
+                int currentRange = (int) order[position++];
 
-            if (expandedTimeRange.duration() >= duration) {
-                workingAttendeeList = currentRange.attendees;
-                returnRange.add(expandedTimeRange);
-                break;
+                if (freeCounts[currentRange] < freeCounts[workingRange]) {
+                    break;
+                }
+
+                if (isSuperset(currentRange, workingRange) &&
+                        windowDuration(currentRange) >= duration) {
+                    windows[windowCount++] = window(currentRange);
+                }
             }
-        }
 
-        if (workingAttendeeList == null) {
-            return null;
+            Arrays.sort(windows, 0, windowCount);
+
+            int distinctCount = 0;
+            for (int i = 0; i < windowCount; i++) {
+                if (distinctCount == 0 ||
+                        windows[i] != windows[distinctCount - 1]) {
+                    windows[distinctCount++] = windows[i];
+                }
+            }
+
+            return distinctCount;
         }
 
-        while (!rangeQueue.isEmpty()) {
-            // Add remaining events that fit the list given
-            Range currentRange = rangeQueue.poll();
+        /**
+         * Returns the best {@code limit} distinct windows of at least
+         * {@code duration} minutes, in rank order. The available ranges are
+         * bucketed by free count instead of sorted, and windows are only
+         * widened for the ranges visited, so the search stops at the
+         * {@code limit}th window without ordering or widening the rest.
+         */
+        List<TimeRange> topWindows(long duration, int limit) {
+            // Bucket the available ranges by decreasing free count, each
+            // bucket in time order.
+            int[] levels = new int[optionalCount + 2];
+            for (int i = 0; i < rangeCount; i++) {
+                if (freeCounts[i] != MANDATORY_BUSY) {
+                    levels[optionalCount - freeCounts[i] + 1]++;
+                }
+            }
+            for (int level = 0; level <= optionalCount; level++) {
+                levels[level + 1] += levels[level];
+            }
 
-            if (!currentRange.mandatoryAvailable) {
-                break;
+            int[] ranked = scratch.stack = Scratch.ints(scratch.stack,
+                levels[optionalCount + 1]);
+            int[] next = Arrays.copyOf(levels, optionalCount + 1);
+            for (int i = 0; i < rangeCount; i++) {
+                if (freeCounts[i] != MANDATORY_BUSY) {
+                    ranked[next[optionalCount - freeCounts[i]]++] = i;
+                }
             }
 
-            if (currentRange.attendees.size() < workingAttendeeList.size()) {
-                break;
+            List<TimeRange> topWindows = new ArrayList<TimeRange>();
+
+            // Within one free count, windows of different attendee sets
+            // cannot contain each other's ranges, so visiting ranges in time
+            // order yields windows by start time, and the ranges that share
+            // a window are visited one after the other.
+            for (int level = 0; level <= optionalCount; level++) {
+                int lastCovered = -1;
+
+                for (int i = levels[level];
+                        i < levels[level + 1] && topWindows.size() < limit;
+                        i++) {
+                    int currentRange = ranked[i];
+                    if (currentRange <= lastCovered) {
+                        continue;
+                    }
+
+                    int left = currentRange;
+                    while (left > 0 && covers(left - 1, currentRange)) {
+                        left--;
+                    }
+                    int right = currentRange;
+                    while (right < rangeCount - 1 &&
+                            covers(right + 1, currentRange)) {
+                        right++;
+                    }
+                    lastCovered = right;
+
+                    if (rangeBounds[right + 1] - rangeBounds[left] >=
+                            duration) {
+                        topWindows.add(TimeRange.fromStartEnd(
+                            rangeBounds[left], rangeBounds[right + 1], false));
+                    }
+                }
             }
 
-            if (currentRange.attendees.containsAll(workingAttendeeList)) {
-                int startTime = cascadeLeft(currentRange);
-                int endTime = cascadeRight(currentRange);
+            return topWindows;
+        }
+
+        /**
+         * Fills {@code order} with the ranges where the mandatory attendees
+         * are free, by decreasing number of free optional attendees and then
+         * by time, so the answer does not depend on how busy intervals
+         * happened to split the day into ranges. Does nothing if the ranges
+         * are already ordered.
+         */
+        private void orderByFreeCount() {
+            if (orderCount >= 0) {
+                return;
+            }
 
-                TimeRange expandedTimeRange = TimeRange.fromStartEnd(startTime,
-                    endTime, false);
+            order = scratch.order = Scratch.longs(scratch.order, rangeCount);
+            orderCount = 0;
 
-                if (expandedTimeRange.duration() >= duration) {
-                    returnRange.add(expandedTimeRange);
+            for (int i = 0; i < rangeCount; i++) {
+                if (freeCounts[i] != MANDATORY_BUSY) {
+                    order[orderCount++] = ((long) (Integer.MAX_VALUE -
+                        freeCounts[i]) << Integer.SIZE) | i;
                 }
             }
+            Arrays.sort(order, 0, orderCount);
         }
 
-        return returnRange;
-    }
+        /**
+         * Answers the request once for each of {@code durations}, keyed and
+         * ordered by duration.
+         */
+        SortedMap<Long, Collection<TimeRange>> processDurations(
+                long[] durations) {
+            SortedMap<Long, Collection<TimeRange>> answers =
+                new TreeMap<Long, Collection<TimeRange>>();
+
+            for (long duration : durations) {
+                if (!answers.containsKey(duration)) {
+                    answers.put(duration, processTimeRanges(duration));
+                }
+            }
+
+            return answers;
+        }
 
-    private int cascadeLeft(Range startRange) {
-        Range breakRange = partitionedRanges.get(0);
+        private long window(int range) {
+            return ((long) leftReach[range] << Integer.SIZE) |
+                rightReach[range];
+        }
 
-        for (int i = startRange.index; i >= 0; i--) {
-            Range currentRange = partitionedRanges.get(i);
+        private int windowDuration(int range) {
+            return cascadeRight(range) - cascadeLeft(range);
+        }
+
+        /**
+         * Fills {@code leftReach} and {@code rightReach} for every range with
+         * one monotonic stack pass in each direction. A range popped from the
+         * stack covers the current one, so by transitivity it covers nothing
+         * the current range does not; each range is pushed and popped once.
+         * Does nothing if the reach is already computed.
+         */
+        private void computeReach() {
+            if (reachComputed) {
+                return;
+            }
+            reachComputed = true;
+
+            int size = rangeCount;
+            int[] stack = scratch.stack = Scratch.ints(scratch.stack, size);
+            leftReach = scratch.leftReach =
+                Scratch.ints(scratch.leftReach, size);
+            rightReach = scratch.rightReach =
+                Scratch.ints(scratch.rightReach, size);
+
+            int top = 0;
+            for (int i = 0; i < size; i++) {
+                while (top > 0 && covers(stack[top - 1], i)) {
+                    top--;
+                }
 
-            if (!currentRange.mandatoryAvailable) {
-                breakRange = partitionedRanges.get(i + 1);
-                break;
+                leftReach[i] = (top == 0) ? 0 : stack[top - 1] + 1;
+                stack[top++] = i;
             }
 
-            if (!currentRange.attendees.containsAll(startRange.attendees)) {
-                breakRange = partitionedRanges.get(i + 1);
-                break;
+            top = 0;
+            for (int i = size - 1; i >= 0; i--) {
+                while (top > 0 && covers(stack[top - 1], i)) {
+                    top--;
+                }
+
+                rightReach[i] = (top == 0) ? size - 1 : stack[top - 1] - 1;
+                stack[top++] = i;
             }
         }
 
-        return breakRange.timeRange.start();
-    }
+        /**
+         * Returns whether range {@code outer} can be merged into the window
+         * of range {@code inner}, i.e. everyone free during {@code inner} is
+         * also free during {@code outer}. Ranges where a mandatory attendee
+         * is busy have no window and act as barriers.
+         */
+        private boolean covers(int outer, int inner) {
+            return freeCounts[outer] != MANDATORY_BUSY &&
+                freeCounts[inner] != MANDATORY_BUSY &&
+                isSuperset(outer, inner);
+        }
 
-    private int cascadeRight(Range startRange) {
-        Range breakRange = partitionedRanges.get(partitionedRanges.size() - 1);
+        /**
+         * Returns whether the free set of range {@code outer} contains the
+         * free set of range {@code inner}.
+         */
+        private boolean isSuperset(int outer, int inner) {
+            int outerBase = outer * words;
+            int innerBase = inner * words;
+
+            for (int w = 0; w < words; w++) {
+                if ((freeSets[innerBase + w] & ~freeSets[outerBase + w]) != 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private int cascadeLeft(int range) {
+            return rangeBounds[leftReach[range]];
+        }
+
+        private int cascadeRight(int range) {
+            return rangeBounds[rightReach[range] + 1];
+        }
+
+        /**
+         * Sweep over the sorted points {@code [firstPoint, endPoint)}, which
+         * cover the times {@code [startTime, endTime)} of the horizon, with
+         * its own busy counters so that chunks can be swept on different
+         * threads. busyOptional has a bit set for every optional attendee
+         * whose counter is positive.
+         */
+        private final class SweepChunk {
+            final int firstPoint;
+            final int endPoint;
+            final int startTime;
+            final int endTime;
+
+            int mandatoryBusy;
+            final int[] optionalBusy;
+            final long[] busyOptional;
+            int busyOptionalCount;
+
+            // Number of ranges the chunk splits its times into.
+            int rangeTotal;
+
+            SweepChunk(int firstPoint, int endPoint, int startTime,
+                    int endTime, int[] optionalBusy, long[] busyOptional) {
+                this.firstPoint = firstPoint;
+                this.endPoint = endPoint;
+                this.startTime = startTime;
+                this.endTime = endTime;
+                this.optionalBusy = optionalBusy;
+                this.busyOptional = busyOptional;
+            }
 
-        for (int i = startRange.index; i < partitionedRanges.size(); i++) {
-            Range currentRange = partitionedRanges.get(i);
+            /**
+             * Counts the ranges of the chunk into {@code rangeTotal} and
+             * returns the net change of each slot's counter over the chunk,
+             * without touching the counters.
+             */
+            int[] scan() {
+                int[] change = new int[optionalCount + 1];
+                int previousTime = startTime;
+                int ranges = 0;
+
+                for (int i = firstPoint; i < endPoint; i++) {
+                    long point = points[i];
+                    int time = (int) (point >> Integer.SIZE);
+
+                    if (time > previousTime) {
+                        ranges++;
+                        previousTime = time;
+                    }
+
+                    boolean start =
+                        ((point >>> TYPE_SHIFT) & 1) == POINT_TYPE_START;
+                    change[(int) (point & SLOT_MASK)] += start ? 1 : -1;
+                }
+
+                if (endTime > previousTime) {
+                    ranges++;
+                }
+
+                rangeTotal = ranges;
+                return change;
+            }
 
-            if (!currentRange.mandatoryAvailable) {
-                breakRange = partitionedRanges.get(i - 1);
-                break;
+            /**
+             * Sets the counters to their values at the start of the chunk,
+             * given by slot as in the sweep points.
+             */
+            void enter(int[] counters) {
+                mandatoryBusy = counters[0];
+
+                for (int id = 0; id < optionalCount; id++) {
+                    optionalBusy[id] = counters[id + 1];
+                    if (optionalBusy[id] > 0) {
+                        busyOptional[id / Long.SIZE] |= 1L << id;
+                        busyOptionalCount++;
+                    }
+                }
             }
 
-            if (!currentRange.attendees.containsAll(startRange.attendees)) {
-                breakRange = partitionedRanges.get(i - 1);
-                break;
+            /**
+             * Sweeps the chunk, writing its ranges from index
+             * {@code firstRange} on, and returns the index after its last
+             * range.
+             */
+            int sweep(int firstRange) {
+                int index = firstRange;
+                int previousTime = startTime;
+
+                for (int i = firstPoint; i < endPoint; i++) {
+                    long point = points[i];
+                    int time = (int) (point >> Integer.SIZE);
+
+                    if (time > previousTime) {
+                        addRange(index++, previousTime);
+                        previousTime = time;
+                    }
+
+                    boolean addToMap =
+                        ((point >>> TYPE_SHIFT) & 1) == POINT_TYPE_START;
+                    updateAttendeeCounter((int) (point & SLOT_MASK) - 1,
+                        addToMap);
+                }
+
+                if (endTime > previousTime) {
+                    addRange(index++, previousTime);
+                }
+
+                return index;
+            }
+
+            /**
+             * Records range {@code index}, which starts at {@code start} and
+             * ends where the next range starts.
+             */
+            private void addRange(int index, int start) {
+                rangeBounds[index] = start;
+                freeCounts[index] = (mandatoryBusy == 0)
+                    ? optionalCount - busyOptionalCount : MANDATORY_BUSY;
+
+                storeFreeSet(index);
+            }
+
+            /**
+             * Writes the set of currently free optional attendees as the
+             * free set of range {@code index}.
+             */
+            private void storeFreeSet(int index) {
+                int base = index * words;
+
+                for (int w = 0; w < words; w++) {
+                    freeSets[base + w] = ~busyOptional[w];
+                }
+
+                // Clear the bits past the last optional attendee.
+                int tailBits = optionalCount % Long.SIZE;
+                if (tailBits != 0) {
+                    freeSets[base + words - 1] &= (1L << tailBits) - 1;
+                }
+            }
+
+            private void updateAttendeeCounter(int id, boolean add) {
+                int change = add ? 1 : -1;
+
+                if (id == MANDATORY) {
+                    mandatoryBusy += change;
+                    return;
+                }
+
+                int before = optionalBusy[id];
+                int after = before + change;
+                optionalBusy[id] = after;
+
+                if (before == 0 || after == 0) {
+                    // The attendee switched between free and busy.
+                    busyOptional[id / Long.SIZE] ^= 1L << id;
+                    busyOptionalCount += (after == 0) ? -1 : 1;
+                }
             }
         }
 
-        return breakRange.timeRange.end();
-    }
+        /**
+         * Returns the requested attendees that appear in any event, as their
+         * dictionary ids in the high 32 bits and their id in the request
+         * in the low 32 bits, sorted by dictionary id. Someone listed as both
+         * counts as optional.
+         */
+        private long[] requestedIds() {
+            HashMap<Integer, Integer> attendeeIds =
+                new HashMap<Integer, Integer>();
+
+            for (String attendee : request.getAttendees()) {
+                int dictionaryId = AttendeeDictionary.find(attendee);
+                if (dictionaryId >= 0) {
+                    attendeeIds.put(dictionaryId, MANDATORY);
+                }
+            }
 
-    private Collection<String> getFreeAttendees(
-            Collection<String> mandatoryList,
-            Collection<String> optionalList) {
+            int nextId = 0;
+            for (String attendee : request.getOptionalAttendees()) {
+                int id = nextId++;
+                int dictionaryId = AttendeeDictionary.find(attendee);
+                if (dictionaryId >= 0) {
+                    attendeeIds.put(dictionaryId, id);
+                }
+            }
+
+            long[] requested = new long[attendeeIds.size()];
+            int count = 0;
+            for (Map.Entry<Integer, Integer> entry : attendeeIds.entrySet()) {
+                requested[count++] = ((long) entry.getKey() << 32)
+                    | (entry.getValue() & 0xFFFFFFFFL);
+            }
+            Arrays.sort(requested);
+
+            return requested;
+        }
 
-        ArrayList<String> returnList = new ArrayList<String>();
+        /**
+         * Collects the busy intervals of the requested attendees. An event
+         * is added to the mandatory union once, however many mandatory
+         * attendees it has. Both the event's attendees and the requested
+         * ones are sorted by dictionary id, so they are matched with one
+         * merge pass that skips ahead through the requested ones by binary
+         * search, as a request may name hundreds of people and an event
+         * only a few of them. Large collections are scanned in parallel
+         * into one buffer per worker, which are then appended in turn.
+         */
+        void preprocessEvents(Collection<Event> events) {
+            long[] requested = requestedIds();
+            if (requested.length == 0) {
+                return;
+            }
+
+            if (maxChunks > 1 && events.size() >= minPointsPerChunk) {
+                BusyBuffer found = events.parallelStream().collect(
+                    BusyBuffer::new,
+                    (buffer, event) -> matchEvent(event, requested, buffer),
+                    BusyBuffer::addAll);
+
+                for (int i = 0; i < found.count; i++) {
+                    addBusyInterval(found.ids[i], found.starts[i],
+                        found.ends[i]);
+                }
+                return;
+            }
 
-        for (String attendee : mandatoryList) {
-            if (mandatoryAttendees.get(attendee) > 0) {
-                return null;
+            BusySink sink = this::addBusyInterval;
+            for (Event event : events) {
+                matchEvent(event, requested, sink);
             }
         }
 
-        for (String attendee : optionalList) {
-            if (optionalAttendees.get(attendee) == 0) {
-                returnList.add(attendee);
+        /**
+         * Adds the time of {@code event} to {@code sink} once for each of
+         * its requested optional attendees, and once more if any of them is
+         * mandatory.
+         */
+        private static void matchEvent(Event event, long[] requested,
+                BusySink sink) {
+            int[] eventAttendees = event.getAttendeeIds();
+            TimeRange when = event.getWhen();
+            boolean mandatoryAdded = false;
+
+            for (int e = 0, r = 0;
+                    e < eventAttendees.length && r < requested.length; ) {
+                int requestedId = (int) (requested[r] >>> 32);
+
+                if (eventAttendees[e] < requestedId) {
+                    e++;
+                    continue;
+                }
+                if (eventAttendees[e] > requestedId) {
+                    r = firstRequestedFrom(requested, r + 1,
+                        eventAttendees[e]);
+                    continue;
+                }
+
+                int id = (int) requested[r];
+                if (id != MANDATORY) {
+                    sink.add(id, when.start(), when.end());
+                }
+                else if (!mandatoryAdded) {
+                    sink.add(id, when.start(), when.end());
+                    mandatoryAdded = true;
+                }
+                e++;
+                r++;
             }
         }
 
-        return returnList;
-    }
+        /**
+         * Returns the index of the first entry of {@code requested} from
+         * {@code from} on whose dictionary id is at least
+         * {@code dictionaryId}, or {@code requested.length}.
+         */
+        private static int firstRequestedFrom(long[] requested, int from,
+                int dictionaryId) {
+            long key = (long) dictionaryId << 32;
+            int low = from;
+            int high = requested.length;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (requested[middle] < key) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
 
-    private void updateAttendeeCounter(Event event, boolean add) {
-        int change = add ? 1 : -1;
+            return low;
+        }
 
-        for (String attendee : event.getAttendees()) {
-            if (optionalAttendees.containsKey(attendee)) {
-                optionalAttendees.put(attendee,
-                    optionalAttendees.get(attendee) + change);
+        void preprocessIndex(EventIndex index) {
+            Collection<String> optionalAttendees =
+                request.getOptionalAttendees();
+            long horizonEnd = origin + span;
+
+            for (String attendee : request.getAttendees()) {
+                // Someone listed as both counts as optional, as in the event
+                // scan where the optional id replaces the mandatory one.
+                if (!optionalAttendees.contains(attendee)) {
+                    index.visitBusy(attendee, origin, horizonEnd,
+                        (start, end) -> addBusyInterval(MANDATORY, start, end));
+                }
             }
-            else if (mandatoryAttendees.containsKey(attendee)) {
-                mandatoryAttendees.put(attendee,
-                    mandatoryAttendees.get(attendee) + change);
+
+            int nextId = 0;
+            for (String attendee : optionalAttendees) {
+                int id = nextId++;
+                index.visitBusy(attendee, origin, horizonEnd,
+                    (start, end) -> addBusyInterval(id, start, end));
+            }
+        }
+
+        void preprocessStore(EventStore store) {
+            Collection<String> optionalAttendees =
+                request.getOptionalAttendees();
+            long horizonEnd = origin + span;
+
+            for (String attendee : request.getAttendees()) {
+                // Someone listed as both counts as optional, as in
+                // preprocessIndex.
+                if (!optionalAttendees.contains(attendee)) {
+                    store.visitBusy(attendee, origin, horizonEnd,
+                        (start, end, event) ->
+                            addBusyInterval(MANDATORY, start, end));
+                }
+            }
+
+            int nextId = 0;
+            for (String attendee : optionalAttendees) {
+                int id = nextId++;
+                store.visitBusy(attendee, origin, horizonEnd,
+                    (start, end, event) -> addBusyInterval(id, start, end));
             }
         }
-    }
 
-    private void initializeHashmap(Collection<String> mandatoryAttendeesList,
-            Collection<String> optionalAttendeesList) {
-        optionalAttendees = new HashMap<String, Integer>();
-        mandatoryAttendees = new HashMap<String, Integer>();
+        void preprocessFile(EventFile file) {
+            Collection<String> optionalAttendees =
+                request.getOptionalAttendees();
 
-        for (String attendee : mandatoryAttendeesList) {
-            mandatoryAttendees.put(attendee, 0);
+            for (String attendee : request.getAttendees()) {
+                // Someone listed as both counts as optional, as in
+                // preprocessIndex.
+                if (!optionalAttendees.contains(attendee)) {
+                    file.visitBusy(attendee,
+                        (start, end) -> addBusyInterval(MANDATORY, start, end));
+                }
+            }
+
+            int nextId = 0;
+            for (String attendee : optionalAttendees) {
+                int id = nextId++;
+                file.visitBusy(attendee,
+                    (start, end) -> addBusyInterval(id, start, end));
+            }
         }
 
-        for (String attendee : optionalAttendeesList) {
-            optionalAttendees.put(attendee, 0);
+        /**
+         * Adds the part of {@code [start, end)} that falls within the
+         * horizon, if any.
+         */
+        private void addBusyInterval(int id, long start, long end) {
+            long clippedStart = Math.max(start, origin);
+            long clippedEnd = Math.min(end, origin + span);
+            if (clippedEnd <= clippedStart) {
+                return;
+            }
+
+            if (busyCount == busySlots.length) {
+                // Scratch may have trimmed the arrays to nothing, so they
+                // cannot simply be doubled.
+                int capacity = 2 * busyCount + 64;
+                busySlots = Arrays.copyOf(busySlots, capacity);
+                busyStarts = Arrays.copyOf(busyStarts, capacity);
+                busyEnds = Arrays.copyOf(busyEnds, capacity);
+            }
+
+            busySlots[busyCount] = id + 1;
+            busyStarts[busyCount] = (int) (clippedStart - origin);
+            busyEnds[busyCount] = (int) (clippedEnd - origin);
+            busyCount++;
         }
-    }
 
-    private void preprocessEvents(Collection<Event> events,
-            Collection<String> mandatoryAttendees,
-            Collection<String> optionalAttendees) {
+        /**
+         * Groups the busy intervals by slot with a counting sort, then sorts
+         * each slot's intervals by start and coalesces the overlapping and
+         * adjacent ones. Slots are merged independently of each other, on
+         * the common fork/join pool when there are many intervals. The
+         * merged intervals become one start and one end point each: when
+         * the points will be bucketed by minute they are simply appended,
+         * and otherwise the slots, each already in time order, are combined
+         * with a k-way merge so that the sweep need not sort them.
+         */
+        private void addSweepPoints() {
+            int slotCount = optionalCount + 1;
+            int[] slotStarts = scratch.slotStarts =
+                Scratch.ints(scratch.slotStarts, slotCount + 1);
+            Arrays.fill(slotStarts, 0, slotCount + 1, 0);
+
+            for (int i = 0; i < busyCount; i++) {
+                slotStarts[busySlots[i] + 1]++;
+            }
+            for (int slot = 0; slot < slotCount; slot++) {
+                slotStarts[slot + 1] += slotStarts[slot];
+            }
+
+            int[] cursors = scratch.cursors =
+                Scratch.ints(scratch.cursors, slotCount);
+            System.arraycopy(slotStarts, 0, cursors, 0, slotCount);
 
-        for (Event event : events) {
-            Collection<String> currentEventAttendees = event.getAttendees();
+            long[] intervals = scratch.intervals =
+                Scratch.longs(scratch.intervals, busyCount);
+            for (int i = 0; i < busyCount; i++) {
+                intervals[cursors[busySlots[i]]++] =
+                    ((long) busyStarts[i] << Integer.SIZE) |
+                    (busyEnds[i] & 0xFFFFFFFFL);
+            }
+
+            // Each slot only touches its own part of intervals and its own
+            // cursor, which becomes the end of its merged intervals.
+            if (maxChunks > 1 && slotCount > 1 &&
+                    busyCount >= minPointsPerChunk) {
+                IntStream.range(0, slotCount).parallel().forEach(slot ->
+                    cursors[slot] = mergeSlot(intervals, slotStarts[slot],
+                        slotStarts[slot + 1]));
+            }
+            else {
+                for (int slot = 0; slot < slotCount; slot++) {
+                    cursors[slot] = mergeSlot(intervals, slotStarts[slot],
+                        slotStarts[slot + 1]);
+                }
+            }
 
-            for (String attendee : currentEventAttendees) {
-                if (mandatoryAttendees.contains(attendee) ||
-                    optionalAttendees.contains(attendee)) {
+            int mergedCount = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                mergedCount += cursors[slot] - slotStarts[slot];
+            }
 
-                    EventPoint currentEventStart = new EventPoint(event,
-                        EventPoint.POINT_TYPE_START);
-                    EventPoint currentEventEnd = new EventPoint(event,
-                        EventPoint.POINT_TYPE_END);
+            if (pointCount + 2 * mergedCount > points.length) {
+                points = Arrays.copyOf(points, pointCount + 2 * mergedCount);
+            }
 
-                    pointList.add(currentEventStart);
-                    pointList.add(currentEventEnd);
+            if (isDense(pointCount + 2 * mergedCount)) {
+                for (int slot = 0; slot < slotCount; slot++) {
+                    for (int i = slotStarts[slot]; i < cursors[slot]; i++) {
+                        addPointPair(slot,
+                            (int) (intervals[i] >> Integer.SIZE),
+                            (int) intervals[i]);
+                    }
                 }
             }
+            else {
+                mergeSlotPoints(slotCount, intervals, slotStarts, cursors);
+                pointsSorted = true;
+            }
         }
 
-        pointList.add(new EventPoint(TimeRange.END_OF_DAY + 1,
-            EventPoint.POINT_TYPE_END));
+        /**
+         * Sorts the intervals {@code [from, to)} by start and coalesces the
+         * overlapping and adjacent ones in place, dropping empty ones.
+         * Returns the end of the merged intervals, which start at
+         * {@code from}.
+         */
+        private static int mergeSlot(long[] intervals, int from, int to) {
+            Arrays.sort(intervals, from, to);
+
+            int merged = from;
+            int mergedStart = 0;
+            int mergedEnd = 0;
+            boolean open = false;
+
+            for (int i = from; i < to; i++) {
+                int start = (int) (intervals[i] >> Integer.SIZE);
+                int end = (int) intervals[i];
+
+                if (end <= start) {
+                    continue;
+                }
 
-        pointList.sort(CHRONOLOGICAL_ORDER);
-    }
+                if (open && start <= mergedEnd) {
+                    mergedEnd = Math.max(mergedEnd, end);
+                    continue;
+                }
 
-    private class Range {
-        boolean mandatoryAvailable;
-        TimeRange timeRange;
-        Collection<String> attendees;
-        int index;
+                if (open) {
+                    intervals[merged++] = packInterval(mergedStart, mergedEnd);
+                }
+
+                mergedStart = start;
+                mergedEnd = end;
+                open = true;
+            }
+
+            if (open) {
+                intervals[merged++] = packInterval(mergedStart, mergedEnd);
+            }
 
-        public Range(boolean mandatoryAvailable, TimeRange timeRange,
-                Collection<String> attendees, int index) {
-            this.mandatoryAvailable = mandatoryAvailable;
-            this.timeRange = timeRange;
-            this.attendees = attendees;
-            this.index = index;
+            return merged;
         }
-    }
 
-    private class EventPoint {
+        private static long packInterval(int start, int end) {
+            return ((long) start << Integer.SIZE) | (end & 0xFFFFFFFFL);
+        }
+
+        /**
+         * Appends the points of the merged intervals of every slot in sorted
+         * order. A slot's merged intervals neither overlap nor touch, so its
+         * points are already in time order; a min-heap holds the next point
+         * of each slot, and the slot of a point is in its low bits.
+         */
+        private void mergeSlotPoints(int slotCount, long[] intervals,
+                int[] runStarts, int[] runEnds) {
+            long[] heap = scratch.heap =
+                Scratch.longs(scratch.heap, slotCount);
+            // Next point of each slot: twice the index of its interval, plus
+            // one for the end of the interval.
+            int[] heads = scratch.heads =
+                Scratch.ints(scratch.heads, slotCount);
+            int heapSize = 0;
+
+            for (int slot = 0; slot < slotCount; slot++) {
+                heads[slot] = 2 * runStarts[slot];
+                if (runStarts[slot] < runEnds[slot]) {
+                    heap[heapSize++] = pointAt(intervals, heads[slot], slot);
+                }
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(heap, heapSize, i);
+            }
+
+            while (heapSize > 0) {
+                long point = heap[0];
+                points[pointCount++] = point;
+
+                int slot = (int) (point & SLOT_MASK);
+                int head = ++heads[slot];
+                heap[0] = (head / 2 < runEnds[slot])
+                    ? pointAt(intervals, head, slot) : heap[--heapSize];
+                siftDown(heap, heapSize, 0);
+            }
+        }
 
-        static final int POINT_TYPE_START = 0;
-        static final int POINT_TYPE_END = 1;
+        private static long pointAt(long[] intervals, int head, int slot) {
+            long interval = intervals[head / 2];
+            int pointType = head % 2;
+            int time = (pointType == POINT_TYPE_START)
+                ? (int) (interval >> Integer.SIZE) : (int) interval;
+            return packPoint(time, pointType, slot);
+        }
 
-        Event event;
-        int time;
-        int pointType;
+        private static void siftDown(long[] heap, int heapSize,
+                int position) {
+            while (true) {
+                int smallest = position;
+                int left = 2 * position + 1;
+                int right = left + 1;
 
-        public EventPoint(Event event, int pointType) {
-            this.event = event;
-            this.pointType = pointType;
+                if (left < heapSize && heap[left] < heap[smallest]) {
+                    smallest = left;
+                }
+                if (right < heapSize && heap[right] < heap[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == position) {
+                    return;
+                }
 
-            if (pointType == POINT_TYPE_START) {
-                time = event.getWhen().start();
+                long swap = heap[position];
+                heap[position] = heap[smallest];
+                heap[smallest] = swap;
+                position = smallest;
             }
-            else if (pointType == POINT_TYPE_END) {
-                time = event.getWhen().end();
+        }
+
+        private void addPointPair(int slot, int start, int end) {
+            points[pointCount++] = packPoint(start, POINT_TYPE_START, slot);
+            points[pointCount++] = packPoint(end, POINT_TYPE_END, slot);
+        }
+
+        private static long packPoint(int time, int pointType, int slot) {
+            return ((long) time << Integer.SIZE) |
+                ((long) pointType << TYPE_SHIFT) | slot;
+        }
+    }
+
+    /**
+     * Receives the busy intervals of the requested attendees found in
+     * events, by attendee id.
+     */
+    private interface BusySink {
+        void add(int id, int start, int end);
+    }
+
+    /**
+     * Busy intervals found by one worker of a parallel event scan, as
+     * parallel arrays of attendee id, start and end.
+     */
+    private static final class BusyBuffer implements BusySink {
+        int[] ids = new int[64];
+        int[] starts = new int[64];
+        int[] ends = new int[64];
+        int count;
+
+        @Override
+        public void add(int id, int start, int end) {
+            if (count == ids.length) {
+                grow(count + 1);
+            }
+
+            ids[count] = id;
+            starts[count] = start;
+            ends[count] = end;
+            count++;
+        }
+
+        void addAll(BusyBuffer other) {
+            if (count + other.count > ids.length) {
+                grow(count + other.count);
             }
+
+            System.arraycopy(other.ids, 0, ids, count, other.count);
+            System.arraycopy(other.starts, 0, starts, count, other.count);
+            System.arraycopy(other.ends, 0, ends, count, other.count);
+            count += other.count;
+        }
+
+        private void grow(int size) {
+            int capacity = Math.max(size, 2 * ids.length);
+            ids = Arrays.copyOf(ids, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+    }
+
+    /**
+     * Per-thread arrays reused from one query to the next, so that a query
+     * allocates little beyond its result. Arrays that grew past
+     * {@code MAX_RETAINED} elements are dropped by {@code trim} after the
+     * query instead of being kept alive by the thread.
+     */
+    private static final class Scratch {
+        static final int MAX_RETAINED = 1 << 16;
+
+        int[] busySlots = new int[64];
+        int[] busyStarts = new int[64];
+        int[] busyEnds = new int[64];
+        long[] points = new long[128];
+        long[] sortedPoints = new long[0];
+        int[] buckets = new int[0];
+        long[] intervals = new long[0];
+        int[] slotStarts = new int[0];
+        int[] cursors = new int[0];
+        long[] heap = new long[0];
+        int[] heads = new int[0];
+        int[] optionalBusy = new int[0];
+        long[] busyOptional = new long[0];
+        int[] rangeBounds = new int[0];
+        int[] freeCounts = new int[0];
+        long[] freeSets = new long[0];
+        int[] stack = new int[0];
+        int[] leftReach = new int[0];
+        int[] rightReach = new int[0];
+        long[] order = new long[0];
+        long[] windows = new long[0];
+
+        static int[] ints(int[] array, int size) {
+            return (array.length >= size) ? array : new int[size];
+        }
+
+        static long[] longs(long[] array, int size) {
+            return (array.length >= size) ? array : new long[size];
+        }
+
+        void trim() {
+            busySlots = trim(busySlots);
+            busyStarts = trim(busyStarts);
+            busyEnds = trim(busyEnds);
+            points = trim(points);
+            sortedPoints = trim(sortedPoints);
+            buckets = trim(buckets);
+            intervals = trim(intervals);
+            slotStarts = trim(slotStarts);
+            cursors = trim(cursors);
+            heap = trim(heap);
+            heads = trim(heads);
+            optionalBusy = trim(optionalBusy);
+            busyOptional = trim(busyOptional);
+            rangeBounds = trim(rangeBounds);
+            freeCounts = trim(freeCounts);
+            freeSets = trim(freeSets);
+            stack = trim(stack);
+            leftReach = trim(leftReach);
+            rightReach = trim(rightReach);
+            order = trim(order);
+            windows = trim(windows);
+        }
+
+        private static int[] trim(int[] array) {
+            return (array.length <= MAX_RETAINED) ? array : new int[0];
         }
 
-        public EventPoint(int time, int pointType) {
-            this.event = null;
-            this.time = time;
-            this.pointType = pointType;
+        private static long[] trim(long[] array) {
+            return (array.length <= MAX_RETAINED) ? array : new long[0];
         }
     }
 }
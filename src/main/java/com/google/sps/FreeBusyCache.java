@@ -0,0 +1,430 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Merged busy times of each attendee, kept up to date as intervals are added, moved and removed
+ * instead of being rebuilt from every interval on the next read. Each attendee has a sorted map of
+ * their maximal busy stretches, which reads walk, and an interval tree of the intervals themselves,
+ * which tells a removal what is still busy. A change costs O(log n) plus the number of intervals
+ * and stretches it overlaps, which stays small for calendars of ordinary meetings. Not thread-safe
+ * on its own.
+ *
+ * <p>A cache may start from an {@code IndexSnapshot}, which it reads in place. An attendee is only
+ * copied out of the snapshot into a timeline of their own when they first change.
+ */
+final class FreeBusyCache {
+  /**
+   * Receives merged busy intervals, in chronological order.
+   */
+  interface BusyVisitor {
+    void visit(long start, long end);
+  }
+
+  /**
+   * Walks merged busy intervals one at a time, in chronological order, so that a search can stop
+   * without reading the rest. A cursor reads the cache in place and is only valid until the cache
+   * next changes.
+   */
+  interface BusyCursor {
+    /**
+     * Returns whether the cursor is on an interval, which {@link #start} and {@link #end} return.
+     */
+    boolean valid();
+
+    long start();
+
+    long end();
+
+    /**
+     * Moves to the next interval.
+     */
+    void next();
+  }
+
+  // Cursor of an attendee who is never busy.
+  private static final BusyCursor FREE = new BusyCursor() {
+    @Override
+    public boolean valid() {
+      return false;
+    }
+
+    @Override
+    public long start() {
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public long end() {
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void next() {
+      throw new NoSuchElementException();
+    }
+  };
+
+  // Busy times as they were when the cache was loaded, or null. Attendees with a timeline have
+  // changed since, and their entries in the snapshot are stale.
+  private final IndexSnapshot base;
+
+  private final Map<String, Timeline> attendees = new HashMap<>();
+
+  /**
+   * Creates a cache in which nobody is busy.
+   */
+  FreeBusyCache() {
+    this(null);
+  }
+
+  /**
+   * Creates a cache holding the busy times of {@code base}, or in which nobody is busy if it is
+   * null.
+   */
+  FreeBusyCache(IndexSnapshot base) {
+    this.base = base;
+  }
+
+  /**
+   * Makes {@code attendee} busy during {@code [start, end)}.
+   */
+  void add(String attendee, long start, long end) {
+    timeline(attendee, true).add(start, end);
+  }
+
+  /**
+   * Undoes a call to {@link #add}. Returns {@code false}, changing nothing, if {@code attendee}
+   * was not made busy during exactly {@code [start, end)}.
+   */
+  boolean remove(String attendee, long start, long end) {
+    Timeline timeline = timeline(attendee, false);
+    if (timeline == null || !timeline.remove(start, end)) {
+      return false;
+    }
+
+    // Without a snapshot underneath, a missing timeline already means free.
+    if (timeline.isEmpty() && base == null) {
+      attendees.remove(attendee);
+    }
+
+    return true;
+  }
+
+  /**
+   * Visits the parts of the busy time of {@code attendee} that fall within {@code [from, to)},
+   * merged and clipped to the range.
+   */
+  void visitBusy(String attendee, long from, long to, BusyVisitor visitor) {
+    if (from >= to) {
+      return;
+    }
+
+    Timeline timeline = attendees.get(attendee);
+    if (timeline != null) {
+      timeline.visitBusy(from, to, visitor);
+    } else if (base != null) {
+      int index = base.find(attendee);
+      if (index >= 0) {
+        base.visitBusy(index, from, to, visitor);
+      }
+    }
+  }
+
+  /**
+   * Returns a cursor over the busy time of {@code attendee} within {@code [from, to)}, merged and
+   * clipped to the range as for {@link #visitBusy}.
+   */
+  BusyCursor cursor(String attendee, long from, long to) {
+    if (from >= to) {
+      return FREE;
+    }
+
+    Timeline timeline = attendees.get(attendee);
+    if (timeline != null) {
+      return timeline.cursor(from, to);
+    }
+
+    int index = (base == null) ? -1 : base.find(attendee);
+    return (index < 0) ? FREE : base.cursor(index, from, to);
+  }
+
+  /**
+   * Returns the busy times of every attendee, to be written as an {@code IndexSnapshot}.
+   */
+  IndexSnapshot.Contents snapshot() {
+    IndexSnapshot.Contents contents = new IndexSnapshot.Contents();
+    for (Map.Entry<String, Timeline> entry : attendees.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        entry.getValue().addTo(contents, entry.getKey());
+      }
+    }
+
+    if (base != null) {
+      for (int i = 0; i < base.size(); i++) {
+        String attendee = base.name(i);
+        if (!attendees.containsKey(attendee)) {
+          Times intervals = new Times();
+          Times stretches = new Times();
+          base.visitIntervals(i, intervals);
+          base.visitBusy(i, Long.MIN_VALUE, Long.MAX_VALUE, stretches);
+          contents.add(attendee, intervals.starts(), intervals.ends(), stretches.starts(),
+              stretches.ends());
+        }
+      }
+    }
+
+    return contents;
+  }
+
+  /**
+   * Returns the timeline of {@code attendee}, copying it out of the snapshot if it is there.
+   * Returns null if the attendee has never been busy, unless {@code create} asks for a new one.
+   */
+  private Timeline timeline(String attendee, boolean create) {
+    Timeline timeline = attendees.get(attendee);
+    if (timeline != null) {
+      return timeline;
+    }
+
+    int index = (base == null) ? -1 : base.find(attendee);
+    if (index < 0 && !create) {
+      return null;
+    }
+
+    timeline = new Timeline();
+    if (index >= 0) {
+      timeline.load(base, index);
+    }
+    attendees.put(attendee, timeline);
+    return timeline;
+  }
+
+  /**
+   * The busy time of one attendee.
+   */
+  private static final class Timeline {
+    // Value of every interval in the tree, which only needs their times.
+    private static final Object BUSY = new Object();
+
+    // Every interval that was added, which tells a removal what is still busy.
+    private final IntervalTree<Object> intervals = new IntervalTree<>();
+
+    // Maps the start of each maximal busy stretch to its end. Reads only walk these, so a busy
+    // day costs one entry however many meetings fill it.
+    private final TreeMap<Long, Long> merged = new TreeMap<>();
+
+    boolean isEmpty() {
+      return intervals.size() == 0;
+    }
+
+    /**
+     * Fills an empty timeline with attendee {@code index} of {@code snapshot}.
+     */
+    void load(IndexSnapshot snapshot, int index) {
+      snapshot.visitIntervals(index, (start, end) -> intervals.add(start, end, BUSY));
+      snapshot.visitBusy(index, Long.MIN_VALUE, Long.MAX_VALUE, merged::put);
+    }
+
+    void addTo(IndexSnapshot.Contents contents, String attendee) {
+      Times added = new Times();
+      intervals.visitAll((start, end, value) -> added.visit(start, end));
+
+      long[] mergedStarts = new long[merged.size()];
+      long[] mergedEnds = new long[merged.size()];
+      int i = 0;
+      for (Map.Entry<Long, Long> stretch : merged.entrySet()) {
+        mergedStarts[i] = stretch.getKey();
+        mergedEnds[i] = stretch.getValue();
+        i++;
+      }
+
+      contents.add(attendee, added.starts(), added.ends(), mergedStarts, mergedEnds);
+    }
+
+    void add(long start, long end) {
+      intervals.add(start, end, BUSY);
+      if (start >= end) {
+        return;
+      }
+
+      // Absorb the stretches the interval overlaps or touches into one.
+      long mergedStart = start;
+      long mergedEnd = end;
+      Map.Entry<Long, Long> before = merged.floorEntry(start);
+      if (before != null && before.getValue() >= start) {
+        mergedStart = before.getKey();
+        mergedEnd = Math.max(mergedEnd, before.getValue());
+      }
+
+      for (Map.Entry<Long, Long> next = merged.ceilingEntry(mergedStart);
+          next != null && next.getKey() <= mergedEnd; next = merged.higherEntry(next.getKey())) {
+        mergedEnd = Math.max(mergedEnd, next.getValue());
+        merged.remove(next.getKey());
+      }
+
+      merged.put(mergedStart, mergedEnd);
+    }
+
+    boolean remove(long start, long end) {
+      if (!intervals.remove(start, end, BUSY)) {
+        return false;
+      }
+
+      if (start >= end) {
+        return true;
+      }
+
+      // Only the part of the enclosing stretch under the interval can have become free, so that
+      // part is walked again. From each busy time the walk jumps to the furthest end of the
+      // intervals starting by then, and from each free time to the next start.
+      Map.Entry<Long, Long> enclosing = merged.floorEntry(start);
+      long stretchStart = enclosing.getKey();
+      long stretchEnd = enclosing.getValue();
+      merged.remove(stretchStart);
+
+      long busyStart = stretchStart;
+      boolean busy = stretchStart < start;
+      long time = start;
+
+      while (time < end) {
+        long reach = intervals.maxEndStartingBy(time);
+        if (reach > time) {
+          if (!busy) {
+            busyStart = time;
+            busy = true;
+          }
+          time = Math.min(reach, end);
+        } else {
+          if (busy) {
+            merged.put(busyStart, time);
+            busy = false;
+          }
+          time = Math.min(intervals.firstStartAfter(time), end);
+        }
+      }
+
+      // The rest of the stretch is still busy.
+      if (stretchEnd > end) {
+        merged.put(busy ? busyStart : end, stretchEnd);
+      } else if (busy) {
+        merged.put(busyStart, end);
+      }
+
+      return true;
+    }
+
+    BusyCursor cursor(long from, long to) {
+      Long first = merged.floorKey(from);
+      Iterator<Map.Entry<Long, Long>> stretches =
+          merged.tailMap((first == null) ? from : first).entrySet().iterator();
+
+      return new BusyCursor() {
+        private long start;
+        private long end;
+        private boolean valid;
+
+        {
+          next();
+          // Only the stretch at or before from can end by from.
+          if (valid && end <= from) {
+            next();
+          }
+        }
+
+        @Override
+        public boolean valid() {
+          return valid;
+        }
+
+        @Override
+        public long start() {
+          return Math.max(start, from);
+        }
+
+        @Override
+        public long end() {
+          return Math.min(end, to);
+        }
+
+        @Override
+        public void next() {
+          valid = false;
+          if (stretches.hasNext()) {
+            Map.Entry<Long, Long> stretch = stretches.next();
+            start = stretch.getKey();
+            end = stretch.getValue();
+            valid = start < to;
+          }
+        }
+      };
+    }
+
+    void visitBusy(long from, long to, BusyVisitor visitor) {
+      Long first = merged.floorKey(from);
+      if (first == null) {
+        first = from;
+      }
+
+      for (Map.Entry<Long, Long> stretch : merged.tailMap(first).entrySet()) {
+        long start = stretch.getKey();
+        if (start >= to) {
+          break;
+        }
+
+        long end = stretch.getValue();
+        if (end > from) {
+          visitor.visit(Math.max(start, from), Math.min(end, to));
+        }
+      }
+    }
+  }
+
+  /**
+   * Collects visited intervals into arrays.
+   */
+  private static final class Times implements BusyVisitor {
+    private long[] starts = new long[8];
+    private long[] ends = new long[8];
+    private int size;
+
+    @Override
+    public void visit(long start, long end) {
+      if (size == starts.length) {
+        starts = Arrays.copyOf(starts, 2 * size);
+        ends = Arrays.copyOf(ends, 2 * size);
+      }
+
+      starts[size] = start;
+      ends[size] = end;
+      size++;
+    }
+
+    long[] starts() {
+      return Arrays.copyOf(starts, size);
+    }
+
+    long[] ends() {
+      return Arrays.copyOf(ends, size);
+    }
+  }
+}
@@ -0,0 +1,353 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory-mapped copy of the busy times of every attendee of a {@code FreeBusyCache}, so that an
+ * index can start serving queries as soon as the file is mapped instead of after re-adding every
+ * interval. For each attendee the file holds both the intervals that were added, which a change
+ * to the attendee needs, and their merged busy stretches, which queries read. Opening a snapshot
+ * only reads its header; a snapshot is never modified and is safe to share between threads.
+ *
+ * <p>The file is a header of eight ints, the last two of which hold a tag naming the events the
+ * index was built from, followed by these sections, all big-endian:
+ *
+ * <pre>
+ *   long[intervals]    start of every interval, by attendee and then by start
+ *   long[intervals]    end of every interval
+ *   long[stretches]    start of every busy stretch, by attendee and then by start
+ *   long[stretches]    end of every busy stretch
+ *   int[names + 1]     offset of the intervals of each attendee
+ *   int[names + 1]     offset of the stretches of each attendee
+ *   int[names + 1]     offset of each name in the name bytes
+ *   byte[]             attendee names in UTF-8, sorted by their bytes
+ * </pre>
+ */
+final class IndexSnapshot {
+  private static final int MAGIC = 0x49445831; // "IDX1"
+  private static final int FORMAT_VERSION = 2;
+  // The header is padded to a multiple of eight bytes so that the longs that follow are aligned.
+  private static final int HEADER_INTS = 8;
+
+  private final long source;
+  private final LongBuffer intervalStarts;
+  private final LongBuffer intervalEnds;
+  private final LongBuffer stretchStarts;
+  private final LongBuffer stretchEnds;
+  private final IntBuffer intervalOffsets;
+  private final IntBuffer stretchOffsets;
+  private final MappedStrings names;
+
+  private IndexSnapshot(ByteBuffer buffer) throws IOException {
+    if (buffer.capacity() < HEADER_INTS * Integer.BYTES) {
+      throw new IOException("index snapshot is truncated");
+    }
+
+    IntBuffer header = buffer.asIntBuffer();
+    if (header.get(0) != MAGIC || header.get(1) != FORMAT_VERSION) {
+      throw new IOException("not an index snapshot of format version " + FORMAT_VERSION);
+    }
+
+    int attendees = header.get(2);
+    int intervals = header.get(3);
+    int stretches = header.get(4);
+    int nameLength = header.get(5);
+    source = ((long) header.get(6) << Integer.SIZE) | (header.get(7) & 0xFFFFFFFFL);
+
+    boolean negative = (attendees | intervals | stretches | nameLength) < 0;
+    if (negative || buffer.capacity() != fileLength(attendees, intervals, stretches, nameLength)) {
+      throw new IOException("index snapshot is corrupt");
+    }
+
+    int position = HEADER_INTS * Integer.BYTES;
+    intervalStarts = section(buffer, position, intervals * Long.BYTES).asLongBuffer();
+    position += intervals * Long.BYTES;
+    intervalEnds = section(buffer, position, intervals * Long.BYTES).asLongBuffer();
+    position += intervals * Long.BYTES;
+    stretchStarts = section(buffer, position, stretches * Long.BYTES).asLongBuffer();
+    position += stretches * Long.BYTES;
+    stretchEnds = section(buffer, position, stretches * Long.BYTES).asLongBuffer();
+    position += stretches * Long.BYTES;
+
+    int offsetBytes = (attendees + 1) * Integer.BYTES;
+    intervalOffsets = section(buffer, position, offsetBytes).asIntBuffer();
+    position += offsetBytes;
+    stretchOffsets = section(buffer, position, offsetBytes).asIntBuffer();
+    position += offsetBytes;
+    IntBuffer nameOffsets = section(buffer, position, offsetBytes).asIntBuffer();
+    position += offsetBytes;
+    names = new MappedStrings(nameOffsets, section(buffer, position, nameLength));
+  }
+
+  /**
+   * Maps the index snapshot at {@code file}. Only the header is read, and is checked against the
+   * length of the file.
+   *
+   * @throws IOException if the file cannot be read or is not a complete index snapshot
+   */
+  static IndexSnapshot open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("index snapshot is larger than 2GB");
+      }
+
+      // The mapping stays valid after the channel is closed, until the buffer is collected.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new IndexSnapshot(buffer);
+    }
+  }
+
+  /**
+   * Writes {@code contents} as an index snapshot at {@code file}, replacing any file there, tagged
+   * with {@code source}. As for an {@code EventFile}, the snapshot is written next to the file,
+   * synced and moved into place.
+   */
+  static void write(Path file, Contents contents, long source) throws IOException {
+    contents.layOut();
+    List<byte[]> encodedNames = Arrays.asList(contents.names);
+    int nameLength = MappedStrings.totalLength(encodedNames);
+    int attendees = contents.names.length;
+    int intervals = contents.intervalOffsets[attendees];
+    int stretches = contents.stretchOffsets[attendees];
+    if (fileLength(attendees, intervals, stretches, nameLength) > Integer.MAX_VALUE) {
+      throw new IOException("index does not fit in a 2GB snapshot");
+    }
+
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(attendees);
+      out.writeInt(intervals);
+      out.writeInt(stretches);
+      out.writeInt(nameLength);
+      out.writeLong(source);
+
+      writeLongs(out, contents.intervalStarts, intervals);
+      writeLongs(out, contents.intervalEnds, intervals);
+      writeLongs(out, contents.stretchStarts, stretches);
+      writeLongs(out, contents.stretchEnds, stretches);
+      for (int offset : contents.intervalOffsets) {
+        out.writeInt(offset);
+      }
+      for (int offset : contents.stretchOffsets) {
+        out.writeInt(offset);
+      }
+      MappedStrings.writeOffsets(out, encodedNames);
+      for (byte[] name : contents.names) {
+        out.write(name);
+      }
+
+      out.flush();
+      channel.force(true);
+    }
+
+    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Returns the tag the snapshot was written with.
+   */
+  long source() {
+    return source;
+  }
+
+  /**
+   * Returns the number of attendees in the snapshot.
+   */
+  int size() {
+    return names.size();
+  }
+
+  /**
+   * Returns the name of attendee {@code index}.
+   */
+  String name(int index) {
+    return names.get(index);
+  }
+
+  /**
+   * Returns the index of {@code attendee}, or -1 if they have no busy times in the snapshot.
+   */
+  int find(String attendee) {
+    return names.find(attendee);
+  }
+
+  /**
+   * Visits the intervals of attendee {@code index} in order of start, including empty ones.
+   */
+  void visitIntervals(int index, FreeBusyCache.BusyVisitor visitor) {
+    for (int i = intervalOffsets.get(index); i < intervalOffsets.get(index + 1); i++) {
+      visitor.visit(intervalStarts.get(i), intervalEnds.get(i));
+    }
+  }
+
+  /**
+   * Visits the busy stretches of attendee {@code index} that overlap {@code [from, to)}, clipped
+   * to the range.
+   */
+  void visitBusy(int index, long from, long to, FreeBusyCache.BusyVisitor visitor) {
+    for (FreeBusyCache.BusyCursor cursor = cursor(index, from, to); cursor.valid();
+        cursor.next()) {
+      visitor.visit(cursor.start(), cursor.end());
+    }
+  }
+
+  /**
+   * Returns a cursor over the busy stretches of attendee {@code index} that overlap
+   * {@code [from, to)}, clipped to the range. The first of them is found by binary search.
+   */
+  FreeBusyCache.BusyCursor cursor(int index, long from, long to) {
+    int low = stretchOffsets.get(index);
+    int high = stretchOffsets.get(index + 1);
+    int last = high;
+
+    // Stretches neither overlap nor touch, so their ends are sorted as well as their starts.
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (stretchEnds.get(middle) <= from) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+
+    int first = low;
+    return new FreeBusyCache.BusyCursor() {
+      private int position = first;
+
+      @Override
+      public boolean valid() {
+        return position < last && stretchStarts.get(position) < to;
+      }
+
+      @Override
+      public long start() {
+        return Math.max(stretchStarts.get(position), from);
+      }
+
+      @Override
+      public long end() {
+        return Math.min(stretchEnds.get(position), to);
+      }
+
+      @Override
+      public void next() {
+        position++;
+      }
+    };
+  }
+
+  private static long fileLength(int attendees, int intervals, int stretches, int nameLength) {
+    return (long) HEADER_INTS * Integer.BYTES
+        + 2L * Long.BYTES * intervals
+        + 2L * Long.BYTES * stretches
+        + 3L * Integer.BYTES * (attendees + 1L)
+        + nameLength;
+  }
+
+  private static ByteBuffer section(ByteBuffer buffer, int position, int length) {
+    ByteBuffer section = buffer.duplicate();
+    ((Buffer) section).position(position);
+    ((Buffer) section).limit(position + length);
+    return section.slice();
+  }
+
+  private static void writeLongs(DataOutputStream out, long[] values, int count)
+      throws IOException {
+    for (int i = 0; i < count; i++) {
+      out.writeLong(values[i]);
+    }
+  }
+
+  /**
+   * Busy times of every attendee gathered for {@link #write}, which lays them out as in the file.
+   */
+  static final class Contents {
+    private final Map<String, long[][]> attendees = new HashMap<>();
+
+    private byte[][] names;
+    private int[] intervalOffsets;
+    private int[] stretchOffsets;
+    private long[] intervalStarts;
+    private long[] intervalEnds;
+    private long[] stretchStarts;
+    private long[] stretchEnds;
+
+    /**
+     * Adds the busy times of {@code attendee}: the starts and ends of their intervals and of their
+     * merged stretches, each in order of start. Attendees may be added in any order.
+     */
+    void add(String attendee, long[] starts, long[] ends, long[] mergedStarts, long[] mergedEnds) {
+      attendees.put(attendee, new long[][] {starts, ends, mergedStarts, mergedEnds});
+    }
+
+    private void layOut() {
+      String[] sorted = attendees.keySet().toArray(new String[0]);
+      Map<String, byte[]> encodings = new HashMap<>();
+      for (String name : sorted) {
+        encodings.put(name, name.getBytes(StandardCharsets.UTF_8));
+      }
+      Arrays.sort(sorted, (a, b) -> MappedStrings.compare(encodings.get(a), encodings.get(b)));
+
+      names = new byte[sorted.length][];
+      intervalOffsets = new int[sorted.length + 1];
+      stretchOffsets = new int[sorted.length + 1];
+      for (int i = 0; i < sorted.length; i++) {
+        long[][] times = attendees.get(sorted[i]);
+        names[i] = encodings.get(sorted[i]);
+        intervalOffsets[i + 1] = intervalOffsets[i] + times[0].length;
+        stretchOffsets[i + 1] = stretchOffsets[i] + times[2].length;
+      }
+
+      intervalStarts = new long[intervalOffsets[sorted.length]];
+      intervalEnds = new long[intervalStarts.length];
+      stretchStarts = new long[stretchOffsets[sorted.length]];
+      stretchEnds = new long[stretchStarts.length];
+      for (int i = 0; i < sorted.length; i++) {
+        long[][] times = attendees.get(sorted[i]);
+        System.arraycopy(times[0], 0, intervalStarts, intervalOffsets[i], times[0].length);
+        System.arraycopy(times[1], 0, intervalEnds, intervalOffsets[i], times[1].length);
+        System.arraycopy(times[2], 0, stretchStarts, stretchOffsets[i], times[2].length);
+        System.arraycopy(times[3], 0, stretchEnds, stretchOffsets[i], times[3].length);
+      }
+    }
+  }
+}
@@ -0,0 +1,294 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+/**
+ * A mutable set of intervals {@code [start, end)} with a value each, answering "which intervals
+ * overlap this range" in O(log n + k) expected time for k matches. It is a treap ordered by start
+ * in which every node also records the largest end in its subtree, so whole subtrees that end
+ * before the searched range are skipped. Not thread-safe.
+ */
+final class IntervalTree<T> {
+  /**
+   * Receives the intervals found by a search.
+   */
+  interface Visitor<T> {
+    void visit(long start, long end, T value);
+  }
+
+  private static final class Node<T> {
+    final long start;
+    final long end;
+    final T value;
+
+    // Breaks ties between equal starts, so every node has a distinct key.
+    final long id;
+    final int priority;
+
+    Node<T> left;
+    Node<T> right;
+    long maxEnd;
+
+    Node(long start, long end, T value, long id) {
+      this.start = start;
+      this.end = end;
+      this.value = value;
+      this.id = id;
+      this.priority = priority(id);
+      this.maxEnd = end;
+    }
+  }
+
+  private Node<T> root;
+  private int size;
+  private long nextId;
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Adds {@code [start, end)} with {@code value}. The same interval and value may be added more
+   * than once.
+   */
+  void add(long start, long end, T value) {
+    root = insert(root, new Node<T>(start, end, value, nextId++));
+    size++;
+  }
+
+  /**
+   * Removes one copy of {@code [start, end)} with a value equal to {@code value}. Returns
+   * {@code false} if there was none.
+   */
+  boolean remove(long start, long end, T value) {
+    Node<T> node = find(root, start, end, value);
+    if (node == null) {
+      return false;
+    }
+
+    root = delete(root, node);
+    size--;
+    return true;
+  }
+
+  /**
+   * Visits every interval that shares at least one minute with {@code [from, to)}, in order of
+   * start.
+   */
+  void visitOverlapping(long from, long to, Visitor<? super T> visitor) {
+    if (from < to) {
+      visitOverlapping(root, from, to, visitor);
+    }
+  }
+
+  /**
+   * Visits every interval in order of start.
+   */
+  void visitAll(Visitor<? super T> visitor) {
+    visitAll(root, visitor);
+  }
+
+  /**
+   * Returns the largest end of the intervals starting at or before {@code time}, or
+   * {@code Long.MIN_VALUE} if there are none. Takes O(log n) expected time.
+   */
+  long maxEndStartingBy(long time) {
+    long maxEnd = Long.MIN_VALUE;
+    Node<T> node = root;
+
+    while (node != null) {
+      if (node.start <= time) {
+        // This node and its whole left subtree start by time.
+        maxEnd = Math.max(maxEnd, node.end);
+        if (node.left != null) {
+          maxEnd = Math.max(maxEnd, node.left.maxEnd);
+        }
+        node = node.right;
+      } else {
+        node = node.left;
+      }
+    }
+
+    return maxEnd;
+  }
+
+  /**
+   * Returns the earliest start after {@code time}, or {@code Long.MAX_VALUE} if no interval starts
+   * after it. Takes O(log n) expected time.
+   */
+  long firstStartAfter(long time) {
+    long first = Long.MAX_VALUE;
+    Node<T> node = root;
+
+    while (node != null) {
+      if (node.start > time) {
+        first = node.start;
+        node = node.left;
+      } else {
+        node = node.right;
+      }
+    }
+
+    return first;
+  }
+
+  private static <T> void visitAll(Node<T> node, Visitor<? super T> visitor) {
+    while (node != null) {
+      visitAll(node.left, visitor);
+      visitor.visit(node.start, node.end, node.value);
+      node = node.right;
+    }
+  }
+
+  private static <T> void visitOverlapping(Node<T> node, long from, long to,
+      Visitor<? super T> visitor) {
+    // Nothing in this subtree ends after from.
+    if (node == null || node.maxEnd <= from) {
+      return;
+    }
+
+    visitOverlapping(node.left, from, to, visitor);
+
+    // This node and everything to its right start at or after to.
+    if (node.start >= to) {
+      return;
+    }
+
+    // Empty intervals share no minute with anything.
+    if (node.end > from && node.end > node.start) {
+      visitor.visit(node.start, node.end, node.value);
+    }
+
+    visitOverlapping(node.right, from, to, visitor);
+  }
+
+  private static <T> Node<T> find(Node<T> node, long start, long end, T value) {
+    while (node != null && node.start != start) {
+      node = (start < node.start) ? node.left : node.right;
+    }
+
+    if (node == null) {
+      return null;
+    }
+
+    if (node.end == end && node.value.equals(value)) {
+      return node;
+    }
+
+    // Intervals with the same start sit on both sides of this one.
+    Node<T> found = find(node.left, start, end, value);
+    return (found != null) ? found : find(node.right, start, end, value);
+  }
+
+  private static <T> Node<T> insert(Node<T> node, Node<T> added) {
+    if (node == null) {
+      return added;
+    }
+
+    if (before(added, node)) {
+      node.left = insert(node.left, added);
+      if (node.left.priority > node.priority) {
+        node = rotateRight(node);
+      }
+    } else {
+      node.right = insert(node.right, added);
+      if (node.right.priority > node.priority) {
+        node = rotateLeft(node);
+      }
+    }
+
+    update(node);
+    return node;
+  }
+
+  private static <T> Node<T> delete(Node<T> node, Node<T> removed) {
+    if (node == removed) {
+      return merge(node.left, node.right);
+    }
+
+    if (before(removed, node)) {
+      node.left = delete(node.left, removed);
+    } else {
+      node.right = delete(node.right, removed);
+    }
+
+    update(node);
+    return node;
+  }
+
+  /**
+   * Joins two treaps where every key of {@code left} comes before every key of {@code right}.
+   */
+  private static <T> Node<T> merge(Node<T> left, Node<T> right) {
+    if (left == null) {
+      return right;
+    }
+    if (right == null) {
+      return left;
+    }
+
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      update(left);
+      return left;
+    }
+
+    right.left = merge(left, right.left);
+    update(right);
+    return right;
+  }
+
+  private static <T> Node<T> rotateRight(Node<T> node) {
+    Node<T> left = node.left;
+    node.left = left.right;
+    left.right = node;
+    update(node);
+    return left;
+  }
+
+  private static <T> Node<T> rotateLeft(Node<T> node) {
+    Node<T> right = node.right;
+    node.right = right.left;
+    right.left = node;
+    update(node);
+    return right;
+  }
+
+  private static void update(Node<?> node) {
+    long maxEnd = node.end;
+    if (node.left != null) {
+      maxEnd = Math.max(maxEnd, node.left.maxEnd);
+    }
+    if (node.right != null) {
+      maxEnd = Math.max(maxEnd, node.right.maxEnd);
+    }
+    node.maxEnd = maxEnd;
+  }
+
+  private static boolean before(Node<?> a, Node<?> b) {
+    return a.start < b.start || (a.start == b.start && a.id < b.id);
+  }
+
+  /**
+   * Scrambles an id into a heap priority. Ids are handed out in order, so they need mixing to keep
+   * the treap balanced; mixing instead of a random generator keeps the shape reproducible.
+   */
+  private static int priority(long id) {
+    long mixed = id * 0x9E3779B97F4A7C15L;
+    mixed ^= mixed >>> 32;
+    mixed *= 0xBF58476D1CE4E5B9L;
+    return (int) (mixed ^ (mixed >>> 29));
+  }
+}
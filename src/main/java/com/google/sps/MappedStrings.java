@@ -0,0 +1,136 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Table of strings in a mapped file: their UTF-8 bytes one after the other, and the offset of each
+ * string in the bytes followed by the end of the last one. A table written sorted by
+ * {@link #compare} can be searched without decoding any of its strings.
+ */
+final class MappedStrings {
+  private final IntBuffer offsets;
+  private final ByteBuffer bytes;
+
+  MappedStrings(IntBuffer offsets, ByteBuffer bytes) {
+    this.offsets = offsets;
+    this.bytes = bytes;
+  }
+
+  int size() {
+    return offsets.limit() - 1;
+  }
+
+  /**
+   * Returns string {@code index} of the table.
+   */
+  String get(int index) {
+    int from = offsets.get(index);
+    byte[] encoded = new byte[offsets.get(index + 1) - from];
+
+    // Absolute bulk reads only arrived in Java 13, so read through a private cursor.
+    ByteBuffer cursor = bytes.duplicate();
+    ((Buffer) cursor).position(from);
+    cursor.get(encoded);
+    return new String(encoded, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the index of {@code string} in a sorted table, or -1 if the table does not hold it.
+   */
+  int find(String string) {
+    byte[] encoded = string.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = size() - 1;
+
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int order = compareAt(middle, encoded);
+      if (order < 0) {
+        low = middle + 1;
+      } else if (order > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+
+    return -1;
+  }
+
+  private int compareAt(int index, byte[] encoded) {
+    int from = offsets.get(index);
+    int length = offsets.get(index + 1) - from;
+
+    for (int i = 0; i < Math.min(length, encoded.length); i++) {
+      int order = Integer.compare(bytes.get(from + i) & 0xFF, encoded[i] & 0xFF);
+      if (order != 0) {
+        return order;
+      }
+    }
+
+    return Integer.compare(length, encoded.length);
+  }
+
+  /**
+   * Orders encoded strings by their unsigned bytes, the order in which {@link #find} searches.
+   */
+  static int compare(byte[] a, byte[] b) {
+    for (int i = 0; i < Math.min(a.length, b.length); i++) {
+      int order = Integer.compare(a[i] & 0xFF, b[i] & 0xFF);
+      if (order != 0) {
+        return order;
+      }
+    }
+
+    return Integer.compare(a.length, b.length);
+  }
+
+  /**
+   * Returns the number of bytes of {@code strings}.
+   *
+   * @throws IOException if they do not fit in a mapped file
+   */
+  static int totalLength(List<byte[]> strings) throws IOException {
+    long length = 0;
+    for (byte[] string : strings) {
+      length += string.length;
+    }
+
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("strings do not fit in a 2GB file");
+    }
+    return (int) length;
+  }
+
+  /**
+   * Writes the offsets of a table of {@code strings}, whose bytes are written separately.
+   */
+  static void writeOffsets(DataOutputStream out, List<byte[]> strings) throws IOException {
+    int offset = 0;
+    out.writeInt(offset);
+    for (byte[] string : strings) {
+      offset += string.length;
+      out.writeInt(offset);
+    }
+  }
+}
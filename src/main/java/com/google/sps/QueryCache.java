@@ -0,0 +1,212 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the answers of {@link FindMeetingQuery#query(EventIndex, MeetingRequest)} for the most
+ * recently asked requests. Requests naming the same attendees, in any order, and the same duration
+ * share an answer. Each answer records the versions of its attendees' busy times, so a change to
+ * the index only invalidates the answers of the people it touches. Once the cache is full, the
+ * least recently used answer is evicted. The cache is safe to share between threads.
+ */
+public final class QueryCache {
+  private final FindMeetingQuery query;
+  private final EventIndex index;
+
+  // Guarded by itself. Iterates from least to most recently used.
+  private final Map<Key, Answer> answers;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates a cache of the answers of {@code query} over {@code index}.
+   *
+   * @param capacity The largest number of answers to keep. Must be positive.
+   */
+  public QueryCache(FindMeetingQuery query, EventIndex index, int capacity) {
+    if (query == null || index == null) {
+      throw new IllegalArgumentException("query and index cannot be null");
+    }
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+
+    this.query = query;
+    this.index = index;
+    this.answers = new LinkedHashMap<Key, Answer>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Answer> eldest) {
+        if (size() > capacity) {
+          evictions.increment();
+          return true;
+        }
+
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns the same slots as {@code query.query(index, request)}, reusing an earlier answer if
+   * none of the attendees' busy times changed since. The returned collection cannot be modified.
+   */
+  public Collection<TimeRange> query(MeetingRequest request) {
+    Key key = new Key(request);
+
+    // Versions are read before answering, so a change made while answering leaves the new answer
+    // looking stale rather than current.
+    long[] versions = index.versions(key.attendees);
+
+    Answer cached;
+    synchronized (answers) {
+      cached = answers.get(key);
+    }
+
+    if (cached != null && Arrays.equals(cached.versions, versions)) {
+      hits.increment();
+      return cached.slots;
+    }
+
+    misses.increment();
+    if (cached != null) {
+      invalidations.increment();
+    }
+
+    Collection<TimeRange> slots =
+        Collections.unmodifiableList(new ArrayList<>(query.query(index, request)));
+    synchronized (answers) {
+      answers.put(key, new Answer(slots, versions));
+    }
+
+    return slots;
+  }
+
+  /**
+   * Returns the number of answers currently kept.
+   */
+  public int size() {
+    synchronized (answers) {
+      return answers.size();
+    }
+  }
+
+  /**
+   * Returns how many requests were answered from the cache.
+   */
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Returns how many requests had to be answered by the query, including invalidated ones.
+   */
+  public long missCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns how many misses found an answer that was out of date.
+   */
+  public long invalidationCount() {
+    return invalidations.sum();
+  }
+
+  /**
+   * Returns how many answers were dropped to make room for newer ones.
+   */
+  public long evictionCount() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("QueryCache{size=%d, hits=%d, misses=%d, invalidations=%d, evictions=%d}",
+        size(), hitCount(), missCount(), invalidationCount(), evictionCount());
+  }
+
+  /**
+   * A request reduced to what its answer depends on. The attendee sets are sorted, so requests
+   * listing the same people in a different order get equal keys.
+   */
+  private static final class Key {
+    // The mandatory attendees, then the optional ones, each group sorted.
+    final String[] attendees;
+    final int mandatoryCount;
+    final long duration;
+    final int hash;
+
+    Key(MeetingRequest request) {
+      Collection<String> mandatory = request.getAttendees();
+      Collection<String> optional = request.getOptionalAttendees();
+
+      attendees = new String[mandatory.size() + optional.size()];
+      mandatoryCount = mandatory.size();
+      int count = 0;
+      for (String attendee : mandatory) {
+        attendees[count++] = attendee;
+      }
+      for (String attendee : optional) {
+        attendees[count++] = attendee;
+      }
+
+      Arrays.sort(attendees, 0, mandatoryCount);
+      Arrays.sort(attendees, mandatoryCount, attendees.length);
+
+      duration = request.getDuration();
+      hash = 31 * (31 * Arrays.hashCode(attendees) + mandatoryCount) + Long.hashCode(duration);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+
+      Key key = (Key) other;
+      return hash == key.hash && mandatoryCount == key.mandatoryCount
+          && duration == key.duration && Arrays.equals(attendees, key.attendees);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /**
+   * An answer and the versions of the attendees' busy times it was computed from, in the order of
+   * the key's attendees.
+   */
+  private static final class Answer {
+    final Collection<TimeRange> slots;
+    final long[] versions;
+
+    Answer(Collection<TimeRange> slots, long[] versions) {
+      this.slots = slots;
+      this.versions = versions;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.Event;
+import com.google.sps.EventStore;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The serialized JSON of the events in a store, built once and reused until the store changes. The
+ * store bumps its version on every change, so a payload is current exactly when it was built from
+ * the store's current version. Along with the JSON, each version keeps a gzip-compressed copy and
+ * an entity tag derived from the content, so clients can cache it and revalidate cheaply.
+ */
+final class EventsPayload {
+  private final EventStore store;
+
+  // The latest payload. Replaced as a whole so readers never see a half-built one.
+  private volatile Snapshot snapshot;
+
+  EventsPayload(EventStore store) {
+    this.store = store;
+  }
+
+  /**
+   * Returns the current version of the payload, serializing the events again only if they changed
+   * since the last call.
+   */
+  Snapshot snapshot() throws IOException {
+    Snapshot current = snapshot;
+    if (current == null || current.version != store.version()) {
+      // Read the version first: if the store changes while the events are copied, the snapshot
+      // is merely rebuilt again on the next call.
+      long version = store.version();
+      current = new Snapshot(version, store.getEvents());
+      snapshot = current;
+    }
+
+    return current;
+  }
+
+  /**
+   * One version of the payload. None of its arrays may be modified.
+   */
+  static final class Snapshot {
+    // Version of the store the payload was built from.
+    private final long version;
+
+    /** The events as UTF-8 encoded JSON. */
+    final byte[] json;
+
+    /** {@link #json} compressed with gzip. */
+    final byte[] gzipped;
+
+    /** Quoted strong entity tag of {@link #json}; equal content always gets the same tag. */
+    final String etag;
+
+    /**
+     * Entity tag of {@link #gzipped}. A strong tag names one exact byte sequence, so the compressed
+     * body needs a tag of its own.
+     */
+    final String gzippedEtag;
+
+    private Snapshot(long version, List<Event> events) throws IOException {
+      this.version = version;
+      this.json = Json.toBytes(events.toArray(new Event[0]), Event[].class);
+      this.gzipped = gzip(json);
+      this.etag = etag(json);
+      this.gzippedEtag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
+  }
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(data);
+    }
+
+    return bytes.toByteArray();
+  }
+
+  private static String etag(byte[] data) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+
+    // Half of the digest is plenty to tell versions of one resource apart.
+    byte[] hash = digest.digest(data);
+    StringBuilder tag = new StringBuilder("\"");
+    for (int i = 0; i < hash.length / 2; i++) {
+      tag.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+      tag.append(Character.forDigit(hash[i] & 0xF, 16));
+    }
+
+    return tag.append('"').toString();
+  }
+}
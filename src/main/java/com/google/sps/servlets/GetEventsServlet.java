@@ -14,23 +14,176 @@
 
 package com.google.sps.servlets;
 
+import com.google.sps.Event;
+import com.google.sps.EventStore;
 import com.google.sps.Events;
-import com.google.gson.Gson;
+import com.google.sps.TimeRange;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+/**
+ * Returns the events as JSON. By default every event is returned; the optional {@code start} and
+ * {@code end} parameters, in minutes of the day, and {@code attendee} parameter narrow the answer
+ * down to the events of that attendee overlapping {@code [start, end)}.
+ */
 @WebServlet("/get-events")
 public class GetEventsServlet extends HttpServlet {
+  private final EventStore store = new EventStore(Arrays.asList(Events.events));
+
+  // The events rarely change, so their JSON is built once and only rebuilt after they do.
+  private final EventsPayload payload = new EventsPayload(store);
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Gson gson = new Gson();
-    String jsonResponse = gson.toJson(Events.events);
+    String start = request.getParameter("start");
+    String end = request.getParameter("end");
+    String attendee = request.getParameter("attendee");
+    if (start != null || end != null || attendee != null) {
+      doGetRange(start, end, attendee, response);
+      return;
+    }
+
+    EventsPayload.Snapshot snapshot = payload.snapshot();
+    boolean gzip = acceptsGzip(request.getHeader("Accept-Encoding"));
+
+    // Browsers may keep the events, but must check with us before reusing them. The check is
+    // answered with a bodiless 304 as long as the events are unchanged.
+    response.setHeader("Cache-Control", "no-cache");
+    response.setHeader("Vary", "Accept-Encoding");
+    response.setHeader("ETag", gzip ? snapshot.gzippedEtag : snapshot.etag);
+
+    if (matchesEtag(request.getHeader("If-None-Match"), snapshot.etag, snapshot.gzippedEtag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    byte[] body = gzip ? snapshot.gzipped : snapshot.json;
+    if (gzip) {
+      response.setHeader("Content-Encoding", "gzip");
+    }
 
     // Send the JSON back as the response
-    response.setContentType("application/json");
-    response.getWriter().println(jsonResponse);
+    response.setContentType(Json.CONTENT_TYPE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    response.setContentLength(body.length);
+    response.getOutputStream().write(body);
+  }
+
+  /**
+   * Answers a range request from the store, which only visits the events overlapping the range.
+   * Such answers vary with the parameters and are not cached.
+   */
+  private void doGetRange(String start, String end, String attendee, HttpServletResponse response)
+      throws IOException {
+    TimeRange range = parseRange(start, end);
+    if (range == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+          "start and end must be minutes of the day with start <= end");
+      return;
+    }
+
+    List<Event> events =
+        (attendee == null) ? store.getEvents(range) : store.getEvents(attendee, range);
+    Json.writeArray(response, events.stream(), Event.class);
+  }
+
+  /**
+   * Returns the range named by the {@code start} and {@code end} parameters, either of which may
+   * be missing to leave that side of the day open, or null if they do not name a range of the day.
+   */
+  static TimeRange parseRange(String start, String end) {
+    int startMinute;
+    int endMinute;
+    try {
+      startMinute = (start == null) ? TimeRange.START_OF_DAY : Integer.parseInt(start.trim());
+      endMinute = (end == null) ? TimeRange.WHOLE_DAY.end() : Integer.parseInt(end.trim());
+    } catch (NumberFormatException e) {
+      return null;
+    }
+
+    if (startMinute < TimeRange.START_OF_DAY || endMinute > TimeRange.WHOLE_DAY.end()
+        || startMinute > endMinute) {
+      return null;
+    }
+
+    return TimeRange.fromStartEnd(startMinute, endMinute, false);
+  }
+
+  /**
+   * Returns whether an {@code If-None-Match} header names any of {@code etags}. Tags are compared
+   * weakly, as RFC 7232 asks for this header.
+   */
+  static boolean matchesEtag(String ifNoneMatch, String... etags) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+
+    if (ifNoneMatch.trim().equals("*")) {
+      return true;
+    }
+
+    for (String candidate : ifNoneMatch.split(",")) {
+      candidate = candidate.trim();
+      if (candidate.startsWith("W/")) {
+        candidate = candidate.substring(2);
+      }
+
+      for (String etag : etags) {
+        if (candidate.equals(etag)) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns whether an {@code Accept-Encoding} header allows a gzip body. An explicit
+   * {@code gzip} entry takes precedence over {@code *}, and a zero quality refuses the coding.
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+
+    Boolean gzip = null;
+    Boolean any = null;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim().toLowerCase(Locale.ROOT);
+      boolean accepted = quality(parts) > 0;
+
+      if (name.equals("gzip") || name.equals("x-gzip")) {
+        gzip = accepted;
+      } else if (name.equals("*")) {
+        any = accepted;
+      }
+    }
+
+    return (gzip != null) ? gzip : (any != null && any);
+  }
+
+  private static double quality(String[] parts) {
+    for (int i = 1; i < parts.length; i++) {
+      String parameter = parts[i].trim();
+      if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2).trim());
+        } catch (NumberFormatException e) {
+          // Ignore a malformed weight rather than failing the request.
+          return 1;
+        }
+      }
+    }
+
+    return 1;
   }
 }
@@ -0,0 +1,171 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.Event;
+import com.google.sps.TimeRange;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * JSON helpers shared by the servlets. A {@code Gson} is immutable once built and safe to use from
+ * any number of request threads, so every servlet reuses the one held here.
+ */
+final class Json {
+  static final Gson GSON =
+      new GsonBuilder().registerTypeAdapterFactory(new EventAdapterFactory()).create();
+
+  static final String CONTENT_TYPE = "application/json";
+
+  private Json() {
+    // Disallow instances.
+  }
+
+  /**
+   * Streams {@code value} as the JSON body of {@code response} without building the whole document
+   * as a string first.
+   */
+  static void write(HttpServletResponse response, Object value, Type type) throws IOException {
+    response.setContentType(CONTENT_TYPE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    write(response.getOutputStream(), value, type);
+  }
+
+  /**
+   * Streams {@code elements} as a JSON array body of {@code response}, serializing each element as
+   * the stream produces it.
+   */
+  static <T> void writeArray(HttpServletResponse response, Stream<T> elements, Class<T> type)
+      throws IOException {
+    response.setContentType(CONTENT_TYPE);
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+    JsonWriter jsonWriter = GSON.newJsonWriter(
+        new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+    jsonWriter.beginArray();
+    for (Iterator<T> iterator = elements.iterator(); iterator.hasNext(); ) {
+      GSON.toJson(iterator.next(), type, jsonWriter);
+    }
+    jsonWriter.endArray();
+    jsonWriter.flush();
+  }
+
+  /**
+   * Serializes {@code value} to UTF-8 encoded JSON bytes.
+   */
+  static byte[] toBytes(Object value, Type type) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    write(bytes, value, type);
+    return bytes.toByteArray();
+  }
+
+  private static void write(OutputStream out, Object value, Type type) throws IOException {
+    // OutputStreamWriter already buffers its encoded bytes, so no BufferedWriter on top of it.
+    JsonWriter jsonWriter = GSON.newJsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    GSON.toJson(value, type, jsonWriter);
+
+    // Flush rather than close so the servlet container stays in charge of the response stream.
+    jsonWriter.flush();
+  }
+
+  /**
+   * Converts events to and from the JSON the page expects, with attendees as an array of names.
+   * {@code Event} keeps its attendees as dictionary ids, which reflection would write as numbers.
+   */
+  private static final class EventAdapterFactory implements TypeAdapterFactory {
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (type.getRawType() != Event.class) {
+        return null;
+      }
+
+      TypeAdapter<TimeRange> whenAdapter = gson.getAdapter(TimeRange.class);
+      return (TypeAdapter<T>) new TypeAdapter<Event>() {
+        @Override
+        public void write(JsonWriter out, Event event) throws IOException {
+          if (event == null) {
+            out.nullValue();
+            return;
+          }
+
+          out.beginObject();
+          out.name("title").value(event.getTitle());
+          out.name("when");
+          whenAdapter.write(out, event.getWhen());
+          out.name("attendees").beginArray();
+          for (String attendee : event.getAttendees()) {
+            out.value(attendee);
+          }
+          out.endArray();
+          out.endObject();
+        }
+
+        @Override
+        public Event read(JsonReader in) throws IOException {
+          if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+          }
+
+          String title = null;
+          TimeRange when = null;
+          List<String> attendees = new ArrayList<>();
+
+          in.beginObject();
+          while (in.hasNext()) {
+            switch (in.nextName()) {
+              case "title":
+                title = in.nextString();
+                break;
+              case "when":
+                when = whenAdapter.read(in);
+                break;
+              case "attendees":
+                in.beginArray();
+                while (in.hasNext()) {
+                  attendees.add(in.nextString());
+                }
+                in.endArray();
+                break;
+              default:
+                in.skipValue();
+            }
+          }
+          in.endObject();
+
+          return new Event(title, when, attendees);
+        }
+      };
+    }
+  }
+}
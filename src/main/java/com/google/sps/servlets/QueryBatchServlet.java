@@ -0,0 +1,79 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.EventIndex;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import com.google.gson.reflect.TypeToken;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Answers an array of meeting requests with an array of answers, in the same order. Requests in a
+ * batch share the event index and are answered in parallel.
+ */
+@WebServlet("/query-batch")
+public class QueryBatchServlet extends HttpServlet {
+  private static final Type ANSWERS_TYPE =
+      new TypeToken<List<Collection<TimeRange>>>() {}.getType();
+
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+
+  // Shared with the other query servlets rather than built again.
+  private EventIndex eventIndex;
+
+  @Override
+  public void init() {
+    eventIndex = SharedEventIndex.acquire(this);
+  }
+
+  @Override
+  public void destroy() {
+    SharedEventIndex.release(this);
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // Convert the JSON to the MeetingRequests of the batch.
+    MeetingRequest[] meetingRequests =
+        Json.GSON.fromJson(request.getReader(), MeetingRequest[].class);
+    if (meetingRequests == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Expected an array of requests");
+      return;
+    }
+    for (MeetingRequest meetingRequest : meetingRequests) {
+      if (meetingRequest == null) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Requests cannot be null");
+        return;
+      }
+    }
+
+    // Find the possible meeting times of every request.
+    List<Collection<TimeRange>> answers =
+        findMeetingQuery.queryAll(eventIndex, Arrays.asList(meetingRequests));
+
+    // Stream the answers back as JSON
+    Json.write(response, answers, ANSWERS_TYPE);
+  }
+}
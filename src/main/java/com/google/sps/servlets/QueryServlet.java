@@ -14,13 +14,12 @@
 
 package com.google.sps.servlets;
 
-import com.google.sps.Events;
+import com.google.sps.EventIndex;
 import com.google.sps.FindMeetingQuery;
 import com.google.sps.MeetingRequest;
+import com.google.sps.QueryCache;
 import com.google.sps.TimeRange;
-import com.google.gson.Gson;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Collection;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -29,23 +28,35 @@ import javax.servlet.http.HttpServletResponse;
 
 @WebServlet("/query")
 public class QueryServlet extends HttpServlet {
-  @Override
-  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Gson gson = new Gson();
+  // The query keeps no per-call state, so one instance serves every request thread.
+  private final FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
 
-    // Convert the JSON to an instance of MeetingRequest.
-    MeetingRequest meetingRequest = gson.fromJson(request.getReader(), MeetingRequest.class);
+  // Busy intervals of everyone in the calendar, built once instead of scanning every event per
+  // request, and shared with the other query servlets.
+  private EventIndex eventIndex;
+
+  // Many users ask the same question of an unchanged calendar, so recent answers are reused.
+  private QueryCache queryCache;
+
+  @Override
+  public void init() {
+    eventIndex = SharedEventIndex.acquire(this);
+    queryCache = new QueryCache(findMeetingQuery, eventIndex, 1024);
+  }
 
-    // Find the possible meeting times.
-    FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
-    Collection<TimeRange> answer =
-        findMeetingQuery.query(Arrays.asList(Events.events), meetingRequest);
+  @Override
+  public void destroy() {
+    SharedEventIndex.release(this);
+  }
 
-    // Convert the times to JSON
-    String jsonResponse = gson.toJson(answer);
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // Convert the JSON to an instance of MeetingRequest.
+    MeetingRequest meetingRequest = Json.GSON.fromJson(request.getReader(), MeetingRequest.class);
 
-    // Send the JSON back as the response
-    response.setContentType("application/json");
-    response.getWriter().println(jsonResponse);
+    // Find the possible meeting times, then write them back as JSON one at a time, without building
+    // the whole document as a string first.
+    Collection<TimeRange> answer = queryCache.query(meetingRequest);
+    Json.writeArray(response, answer.stream(), TimeRange.class);
   }
 }
@@ -0,0 +1,116 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.Event;
+import com.google.sps.EventIndex;
+import com.google.sps.Events;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import javax.servlet.GenericServlet;
+
+/**
+ * The one event index of the servlets that answer queries, so that it is built, or opened from a
+ * snapshot, once however many of them are in service. Servlets acquire the index in
+ * {@code init()} and release it in {@code destroy()}. A snapshot is only used if it was written
+ * from the events being served; otherwise the index is built again and written over it.
+ */
+final class SharedEventIndex {
+  // Names a file holding a snapshot of the index. When set, the index is opened from the snapshot
+  // instead of indexing every event, and the snapshot is written whenever the index is rebuilt.
+  private static final String SNAPSHOT_PROPERTY = "sps.indexSnapshot";
+
+  private static EventIndex index;
+  private static int users;
+
+  private SharedEventIndex() {}
+
+  /**
+   * Returns the shared index, opening or building it for the first servlet that asks.
+   */
+  static synchronized EventIndex acquire(GenericServlet servlet) {
+    if (users++ == 0) {
+      index = open(servlet);
+    }
+
+    return index;
+  }
+
+  /**
+   * Gives up the index acquired by {@code servlet}. The index is dropped once no servlet holds it.
+   */
+  static synchronized void release(GenericServlet servlet) {
+    if (users > 0 && --users == 0) {
+      index = null;
+    }
+  }
+
+  private static EventIndex open(GenericServlet servlet) {
+    Path snapshot = snapshotFile();
+    if (snapshot == null) {
+      return new EventIndex(Arrays.asList(Events.events));
+    }
+
+    long source = fingerprint(Events.events);
+    if (Files.exists(snapshot)) {
+      try {
+        return EventIndex.openSnapshot(snapshot, source);
+      } catch (IOException e) {
+        // A stale or bad snapshot only costs the time to index the events again.
+        servlet.log("Could not open index snapshot " + snapshot, e);
+      }
+    }
+
+    // The index is never changed, so the snapshot written now stays current.
+    EventIndex built = new EventIndex(Arrays.asList(Events.events));
+    try {
+      built.writeSnapshot(snapshot, source);
+    } catch (IOException e) {
+      servlet.log("Could not write index snapshot " + snapshot, e);
+    }
+
+    return built;
+  }
+
+  /**
+   * Returns the first eight bytes of the SHA-256 digest of {@code events} as JSON, which changes
+   * whenever any event does.
+   */
+  private static long fingerprint(Event[] events) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256.
+      throw new IllegalStateException(e);
+    }
+
+    byte[] hash = digest.digest(Json.GSON.toJson(events, Event[].class)
+        .getBytes(StandardCharsets.UTF_8));
+    return ByteBuffer.wrap(hash).getLong();
+  }
+
+  private static Path snapshotFile() {
+    String file = System.getProperty(SNAPSHOT_PROPERTY);
+    return (file == null || file.isEmpty()) ? null : Paths.get(file);
+  }
+}
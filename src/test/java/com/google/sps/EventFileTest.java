@@ -0,0 +1,121 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventFileTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_0930AM = TimeRange.getTimeInMinutes(9, 30);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void eventsSurviveRoundTrip() throws IOException {
+    List<Event> events = Arrays.asList(
+        new Event("Standup", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B, PERSON_A)),
+        new Event("D\u00e9jeuner",
+            TimeRange.fromStartEnd(TIME_0930AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList("Zo\u00eb", PERSON_C)),
+        new Event("Standup", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Collections.emptyList()));
+    Path path = folder.getRoot().toPath().resolve("events.bin");
+
+    EventFile.write(path, events);
+    EventFile file = EventFile.open(path);
+
+    Assert.assertEquals(3, file.size());
+    Assert.assertEquals(events, file.getEvents());
+    Assert.assertEquals(events.get(1), file.getEvent(1));
+  }
+
+  @Test
+  public void queryMatchesEventScan() throws IOException {
+    String[] people = {PERSON_A, PERSON_B, PERSON_C, "Person D", "Person E"};
+    Random random = new Random(23);
+
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      int start = random.nextInt(TimeRange.END_OF_DAY - 120);
+      events.add(new Event("Event " + i,
+          TimeRange.fromStartDuration(start, 15 * (1 + random.nextInt(8))),
+          Arrays.asList(people[random.nextInt(people.length)],
+              people[random.nextInt(people.length)])));
+    }
+    Path path = folder.getRoot().toPath().resolve("events.bin");
+    EventFile.write(path, events);
+    EventFile file = EventFile.open(path);
+
+    FindMeetingQuery query = new FindMeetingQuery();
+    for (int i = 0; i < 20; i++) {
+      MeetingRequest request = new MeetingRequest(
+          Arrays.asList(people[random.nextInt(people.length)], "Nobody"),
+          15 * (1 + random.nextInt(4)));
+      request.addOptionalAttendee(people[random.nextInt(people.length)]);
+
+      Assert.assertEquals(query.query(events, request), query.query(file, request));
+    }
+  }
+
+  @Test
+  public void rewriteReplacesFile() throws IOException {
+    Event event = new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A));
+    Path path = folder.getRoot().toPath().resolve("events.bin");
+
+    EventFile.write(path, Arrays.asList(event, event));
+    EventFile.write(path, Arrays.asList(event));
+
+    Assert.assertEquals(Arrays.asList(event), EventFile.open(path).getEvents());
+    Assert.assertFalse(Files.exists(path.resolveSibling("events.bin.tmp")));
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedFileIsRejected() throws IOException {
+    Event event = new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A));
+    Path path = folder.getRoot().toPath().resolve("events.bin");
+    EventFile.write(path, Arrays.asList(event));
+
+    byte[] bytes = Files.readAllBytes(path);
+    Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+
+    EventFile.open(path);
+  }
+}
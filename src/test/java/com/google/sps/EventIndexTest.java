@@ -0,0 +1,208 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventIndexTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_0930AM = TimeRange.getTimeInMinutes(9, 30);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  @Test
+  public void unknownAttendeeIsNeverBusy() {
+    EventIndex index = new EventIndex();
+
+    Assert.assertEquals(Collections.emptyList(), index.getBusyTimes(PERSON_A));
+  }
+
+  @Test
+  public void mergesOverlappingAndAdjacentEvents() {
+    // Events  : |--A--|
+    //              |--A--|
+    //                    |--A--|     |--A--|
+    // Busy    : |--------------|     |-----|
+    EventIndex index = new EventIndex(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_0830AM, TIME_0930AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 3", TimeRange.fromStartEnd(TIME_0930AM, TIME_1000AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 4", TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(12, 0),
+            DURATION_30_MINUTES), Arrays.asList(PERSON_A))));
+
+    Collection<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(TIME_0800AM, TIME_1000AM, false),
+        TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(12, 0), DURATION_30_MINUTES));
+
+    Assert.assertEquals(expected, index.getBusyTimes(PERSON_A));
+  }
+
+  @Test
+  public void eventsAreIndexedForEveryAttendee() {
+    EventIndex index = new EventIndex(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A, PERSON_B))));
+
+    Collection<TimeRange> expected =
+        Arrays.asList(TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES));
+
+    Assert.assertEquals(expected, index.getBusyTimes(PERSON_A));
+    Assert.assertEquals(expected, index.getBusyTimes(PERSON_B));
+    Assert.assertEquals(Collections.emptyList(), index.getBusyTimes(PERSON_C));
+  }
+
+  @Test
+  public void removeUndoesAdd() {
+    Event event1 = new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+        Arrays.asList(PERSON_A));
+    Event event2 = new Event("Event 2", TimeRange.fromStartEnd(TIME_0830AM, TIME_0930AM, false),
+        Arrays.asList(PERSON_A, PERSON_B));
+
+    EventIndex index = new EventIndex(Arrays.asList(event1, event2));
+    Assert.assertTrue(index.remove(event2));
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false)),
+        index.getBusyTimes(PERSON_A));
+    Assert.assertEquals(Collections.emptyList(), index.getBusyTimes(PERSON_B));
+
+    // The event is no longer indexed, so removing it again changes nothing.
+    Assert.assertFalse(index.remove(event2));
+  }
+
+  @Test
+  public void moveShiftsBusyTimes() {
+    // Events  : |--A--|
+    //                 |--A--|
+    // Moved   :                |--A--|
+    Event event1 = new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+        Arrays.asList(PERSON_A));
+    Event event2 = new Event("Event 2", TimeRange.fromStartEnd(TIME_0900AM, TIME_0930AM, false),
+        Arrays.asList(PERSON_A, PERSON_B));
+
+    EventIndex index = new EventIndex(Arrays.asList(event1, event2));
+    Assert.assertTrue(index.move(event2, TimeRange.fromStartEnd(TIME_0930AM, TIME_1000AM, false)));
+
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+        TimeRange.fromStartEnd(TIME_0930AM, TIME_1000AM, false)), index.getBusyTimes(PERSON_A));
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(TIME_0930AM, TIME_1000AM, false)),
+        index.getBusyTimes(PERSON_B));
+
+    // The event is no longer at its old time, so moving it from there changes nothing.
+    Assert.assertFalse(index.move(event2, TimeRange.fromStartEnd(TIME_0800AM, TIME_0830AM, false)));
+  }
+
+  @Test
+  public void updatesMatchRebuiltIndex() {
+    // Random adds, moves and removes of overlapping events, compared after each change with an
+    // index built from scratch.
+    Random random = new Random(11);
+    EventIndex index = new EventIndex();
+    List<Event> events = new ArrayList<>();
+
+    for (int round = 0; round < 500; round++) {
+      int change = events.isEmpty() ? 0 : random.nextInt(3);
+      if (change == 0) {
+        Event event = randomEvent(random, round);
+        events.add(event);
+        index.add(event);
+      } else if (change == 1) {
+        int i = random.nextInt(events.size());
+        Event moved = randomEvent(random, round);
+        moved = new Event(events.get(i).getTitle(), moved.getWhen(), events.get(i).getAttendees());
+        Assert.assertTrue(index.move(events.get(i), moved.getWhen()));
+        events.set(i, moved);
+      } else {
+        Assert.assertTrue(index.remove(events.remove(random.nextInt(events.size()))));
+      }
+
+      EventIndex rebuilt = new EventIndex(events);
+      for (String attendee : Arrays.asList(PERSON_A, PERSON_B, PERSON_C)) {
+        Assert.assertEquals(rebuilt.getBusyTimes(attendee), index.getBusyTimes(attendee));
+      }
+    }
+  }
+
+  @Test
+  public void busyTimesSpanDays() {
+    // A is busy from 22:00 on day 0 to 02:00 on day 1, and at 09:00 on day 1.
+    long day = EpochTimeRange.MINUTES_PER_DAY;
+    EventIndex index = new EventIndex();
+    index.add(EpochTimeRange.fromStartEnd(22 * 60, day), Arrays.asList(PERSON_A));
+    index.add(EpochTimeRange.fromStartEnd(day, day + 2 * 60), Arrays.asList(PERSON_A));
+    index.add(EpochTimeRange.fromStartDuration(day + TIME_0900AM, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_A));
+
+    Assert.assertEquals(Arrays.asList(
+        EpochTimeRange.fromStartEnd(22 * 60, day + 2 * 60),
+        EpochTimeRange.fromStartDuration(day + TIME_0900AM, DURATION_30_MINUTES)),
+        index.getBusyTimes(PERSON_A, EpochTimeRange.ofDays(0, 2)));
+
+    // Busy times are clipped to the requested horizon.
+    Assert.assertEquals(Arrays.asList(EpochTimeRange.fromStartEnd(day, day + 2 * 60)),
+        index.getBusyTimes(PERSON_A, EpochTimeRange.fromStartEnd(day, day + TIME_0800AM)));
+    Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(22 * 60, TimeRange.END_OF_DAY, true)),
+        index.getBusyTimes(PERSON_A));
+  }
+
+  @Test
+  public void queryMatchesEventScan() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false),
+            Arrays.asList(PERSON_C)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_C);
+
+    FindMeetingQuery query = new FindMeetingQuery();
+    Collection<TimeRange> expected = Arrays.asList(
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+        TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, query.query(events, request));
+    Assert.assertEquals(expected, query.query(new EventIndex(events), request));
+  }
+
+  private static Event randomEvent(Random random, int round) {
+    int start = 15 * random.nextInt(40);
+    return new Event("Event " + round, TimeRange.fromStartDuration(start, 15 + random.nextInt(90)),
+        random.nextBoolean() ? Arrays.asList(PERSON_A, PERSON_B) : Arrays.asList(PERSON_C));
+  }
+}
@@ -0,0 +1,270 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventLogTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  private static final Event EVENT_1 = new Event("Event 1",
+      TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A));
+  private static final Event EVENT_2 = new Event("Event 2",
+      TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+      Arrays.asList(PERSON_A, PERSON_B));
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void changesSurviveReopen() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    EventStore store = new EventStore();
+    try (EventLog log = EventLog.open(directory, store)) {
+      log.add(EVENT_1);
+      log.add(EVENT_2);
+      Assert.assertTrue(log.move(EVENT_1, TimeRange.fromStartDuration(TIME_1000AM, 60)));
+      Assert.assertFalse(log.remove(EVENT_1));
+    }
+
+    List<Event> expected = Arrays.asList(EVENT_2, new Event("Event 1",
+        TimeRange.fromStartDuration(TIME_1000AM, 60), Arrays.asList(PERSON_A)));
+    Assert.assertEquals(expected, store.getEvents());
+    Assert.assertEquals(expected, reopen(directory));
+  }
+
+  @Test
+  public void tornTailIsDropped() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (EventLog log = EventLog.open(directory, new EventStore())) {
+      log.add(EVENT_1);
+      log.add(EVENT_2);
+    }
+
+    // A crash in the middle of the last write leaves part of a record behind.
+    Path logFile = directory.resolve("log-0.wal");
+    byte[] bytes = Files.readAllBytes(logFile);
+    Files.write(logFile, Arrays.copyOf(bytes, bytes.length - 3));
+
+    EventStore store = new EventStore();
+    try (EventLog log = EventLog.open(directory, store)) {
+      Assert.assertEquals(Arrays.asList(EVENT_1), store.getEvents());
+
+      // Appending after recovery starts from the end of the last whole record.
+      log.add(EVENT_2);
+    }
+    Assert.assertEquals(Arrays.asList(EVENT_1, EVENT_2), reopen(directory));
+  }
+
+  @Test
+  public void corruptRecordEndsReplay() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (EventLog log = EventLog.open(directory, new EventStore())) {
+      log.add(EVENT_1);
+    }
+
+    Files.write(directory.resolve("log-0.wal"), new byte[] {0, 0, 0, 4, 1, 2, 3, 4, 5, 6, 7, 8},
+        StandardOpenOption.APPEND);
+
+    Assert.assertEquals(Arrays.asList(EVENT_1), reopen(directory));
+  }
+
+  @Test
+  public void compactionFoldsLogIntoSnapshot() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    EventStore store = new EventStore();
+    try (EventLog log = EventLog.open(directory, store)) {
+      log.add(EVENT_1);
+      log.add(EVENT_2);
+      log.compact();
+      log.remove(EVENT_1);
+
+      Assert.assertEquals(1, log.generation());
+    }
+
+    Assert.assertEquals(Arrays.asList("log-1.wal", "snapshot-1.events"), files(directory));
+    Assert.assertEquals(Arrays.asList(EVENT_2), reopen(directory));
+  }
+
+  @Test
+  public void compactionCutShortLosesNothing() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    try (EventLog log = EventLog.open(directory, new EventStore())) {
+      log.add(EVENT_1);
+      log.compact();
+      log.add(EVENT_2);
+
+      // A directory where the snapshot is written makes compaction fail after it has switched to
+      // the next log, as a crash between the two would.
+      Files.createDirectory(directory.resolve("snapshot-2.events.tmp"));
+      try {
+        log.compact();
+        Assert.fail("compaction should not have written its snapshot");
+      } catch (IOException expected) {
+        // The log is left as a crash would leave it.
+      }
+      Assert.assertEquals(2, log.generation());
+    }
+
+    // The first recovery must keep the logs the missing snapshot would have held, so the second
+    // finds them too.
+    List<Event> expected = Arrays.asList(EVENT_1, EVENT_2);
+    Assert.assertEquals(expected, reopen(directory));
+    Assert.assertEquals(expected, reopen(directory));
+  }
+
+  @Test
+  public void backgroundCompactionKeepsEveryChange() throws Exception {
+    // Writers on several threads, with a log small enough to be compacted many times over.
+    Path directory = folder.getRoot().toPath();
+    EventStore store = new EventStore();
+    List<Event> expected = new ArrayList<>();
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try (EventLog log = EventLog.open(directory, store, 2048)) {
+      List<Future<?>> writers = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+          events.add(new Event("Event " + t + "-" + i,
+              TimeRange.fromStartDuration(i, DURATION_30_MINUTES), Arrays.asList(PERSON_A)));
+        }
+        expected.addAll(events);
+
+        writers.add(executor.submit(() -> {
+          for (Event event : events) {
+            log.add(event);
+          }
+          return null;
+        }));
+      }
+
+      for (Future<?> writer : writers) {
+        writer.get();
+      }
+      Assert.assertTrue(log.generation() > 0);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    Assert.assertEquals(sorted(expected), sorted(store.getEvents()));
+    Assert.assertEquals(sorted(expected), sorted(reopen(directory)));
+  }
+
+  @Test
+  public void failedBackgroundCompactionIsReportedByClose() throws IOException {
+    Path directory = folder.getRoot().toPath();
+    EventLog log = EventLog.open(directory, new EventStore(), 1);
+
+    // The only change starts a compaction that cannot write its snapshot.
+    Files.createDirectory(directory.resolve("snapshot-1.events.tmp"));
+    log.add(EVENT_1);
+    try {
+      log.close();
+      Assert.fail("close should report the failed compaction");
+    } catch (IOException expected) {
+      // The change was committed all the same.
+    }
+
+    Assert.assertEquals(Arrays.asList(EVENT_1), reopen(directory));
+  }
+
+  @Test
+  public void closeDuringCommitsOnlyRejectsChanges() throws Exception {
+    // Every change asks for a compaction, so close races with writers handing the compactor work.
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      for (int round = 0; round < 20; round++) {
+        Path directory = folder.newFolder().toPath();
+        EventLog log = EventLog.open(directory, new EventStore(), 1);
+        Future<?> writer = executor.submit(() -> {
+          try {
+            for (int i = 0; ; i++) {
+              log.add(new Event("Event " + i,
+                  TimeRange.fromStartDuration(i % 1000, DURATION_30_MINUTES),
+                  Arrays.asList(PERSON_A)));
+            }
+          } catch (IOException expected) {
+            // The log closed.
+          }
+          return null;
+        });
+
+        Thread.sleep(5);
+        log.close();
+        writer.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void closedLogRejectsChanges() throws IOException {
+    EventLog log = EventLog.open(folder.getRoot().toPath(), new EventStore());
+    log.close();
+
+    log.add(EVENT_1);
+  }
+
+  private static List<Event> reopen(Path directory) throws IOException {
+    EventStore store = new EventStore();
+    EventLog.open(directory, store).close();
+    return store.getEvents();
+  }
+
+  private static List<String> files(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString()).sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static List<String> sorted(List<Event> events) {
+    List<String> titles = new ArrayList<>();
+    for (Event event : events) {
+      titles.add(event.getTitle() + "@" + event.getWhen());
+    }
+    Collections.sort(titles);
+    return titles;
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventStoreTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_0930AM = TimeRange.getTimeInMinutes(9, 30);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  private static final Event EVENT_1 = new Event("Event 1",
+      TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false), Arrays.asList(PERSON_A));
+  private static final Event EVENT_2 = new Event("Event 2",
+      TimeRange.fromStartEnd(TIME_0830AM, TIME_0930AM, false), Arrays.asList(PERSON_A, PERSON_B));
+  private static final Event EVENT_3 = new Event("Event 3",
+      TimeRange.fromStartEnd(TIME_0930AM, TIME_1000AM, false), Arrays.asList(PERSON_B));
+
+  @Test
+  public void eventsInStartOrder() {
+    EventStore store = new EventStore(Arrays.asList(EVENT_3, EVENT_1, EVENT_2));
+
+    Assert.assertEquals(3, store.size());
+    Assert.assertEquals(Arrays.asList(EVENT_1, EVENT_2, EVENT_3), store.getEvents());
+  }
+
+  @Test
+  public void zeroLengthEventsAreListed() {
+    // An empty event overlaps no range, but is still one of the events.
+    Event empty = new Event("Empty", TimeRange.fromStartDuration(TIME_0900AM, 0),
+        Arrays.asList(PERSON_A));
+    EventStore store = new EventStore(Arrays.asList(EVENT_1, empty));
+
+    Assert.assertEquals(Arrays.asList(EVENT_1, empty), store.getEvents());
+    Assert.assertEquals(Collections.emptyList(), store.getEvents(PERSON_A,
+        TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES)));
+  }
+
+  @Test
+  public void overlappingEvents() {
+    // Events  : |--1--|
+    //              |--2--|
+    //                    |--3--|
+    // Range   :       |-|
+    EventStore store = new EventStore(Arrays.asList(EVENT_1, EVENT_2, EVENT_3));
+
+    Assert.assertEquals(Arrays.asList(EVENT_1, EVENT_2),
+        store.getEvents(TimeRange.fromStartEnd(TIME_0830AM + 15, TIME_0900AM + 15, false)));
+
+    // Ranges are half open, so events that only touch the range are left out.
+    Assert.assertEquals(Arrays.asList(EVENT_3),
+        store.getEvents(TimeRange.fromStartEnd(TIME_0930AM, TIME_1000AM, false)));
+    Assert.assertEquals(Collections.emptyList(),
+        store.getEvents(TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true)));
+  }
+
+  @Test
+  public void overlappingEventsOfAttendee() {
+    EventStore store = new EventStore(Arrays.asList(EVENT_1, EVENT_2, EVENT_3));
+
+    Assert.assertEquals(Arrays.asList(EVENT_2, EVENT_3), store.getEvents(PERSON_B,
+        TimeRange.WHOLE_DAY));
+    Assert.assertEquals(Arrays.asList(EVENT_1, EVENT_2), store.getEvents(PERSON_A,
+        TimeRange.fromStartDuration(TIME_0830AM, DURATION_30_MINUTES)));
+    Assert.assertEquals(Collections.emptyList(), store.getEvents(PERSON_C, TimeRange.WHOLE_DAY));
+  }
+
+  @Test
+  public void removeUndoesAdd() {
+    EventStore store = new EventStore(Arrays.asList(EVENT_1, EVENT_2));
+    long version = store.version();
+
+    Assert.assertTrue(store.remove(EVENT_2));
+    Assert.assertNotEquals(version, store.version());
+    Assert.assertEquals(Arrays.asList(EVENT_1), store.getEvents());
+    Assert.assertEquals(Collections.emptyList(), store.getEvents(PERSON_B, TimeRange.WHOLE_DAY));
+
+    // The event is no longer stored, so removing it again changes nothing.
+    version = store.version();
+    Assert.assertFalse(store.remove(EVENT_2));
+    Assert.assertEquals(version, store.version());
+  }
+
+  @Test
+  public void overlapQueriesMatchEventScan() {
+    // Many short and long events with shared start times, checked against a scan of every event
+    // while events are added and removed.
+    Random random = new Random(7);
+    EventStore store = new EventStore();
+    List<Event> events = new ArrayList<>();
+
+    for (int round = 0; round < 2000; round++) {
+      if (events.isEmpty() || random.nextInt(3) != 0) {
+        int start = 15 * random.nextInt(96);
+        int duration = 1 + random.nextInt(Math.min(240, TimeRange.WHOLE_DAY.end() - start));
+        Event event = new Event("Event " + round, TimeRange.fromStartDuration(start, duration),
+            Arrays.asList(random.nextBoolean() ? PERSON_A : PERSON_B));
+        events.add(event);
+        store.add(event);
+      } else {
+        Assert.assertTrue(store.remove(events.remove(random.nextInt(events.size()))));
+      }
+
+      int start = random.nextInt(TimeRange.WHOLE_DAY.end());
+      TimeRange range = TimeRange.fromStartEnd(start,
+          start + random.nextInt(TimeRange.WHOLE_DAY.end() - start + 1), false);
+
+      Collection<Event> expected = new ArrayList<>();
+      Collection<Event> expectedOfA = new ArrayList<>();
+      for (Event event : events) {
+        // An empty range overlaps nothing.
+        if (range.duration() > 0 && event.getWhen().overlaps(range)) {
+          expected.add(event);
+          if (event.getAttendees().contains(PERSON_A)) {
+            expectedOfA.add(event);
+          }
+        }
+      }
+
+      Assert.assertEquals(events.size(), store.size());
+      assertSameEvents(expected, store.getEvents(range));
+      assertSameEvents(expectedOfA, store.getEvents(PERSON_A, range));
+    }
+  }
+
+  @Test
+  public void queryMatchesEventScan() {
+    // The query reads the store's own copy of its events, so it is checked against the events the
+    // store was given while events are added and removed.
+    String[] people = {PERSON_A, PERSON_B, PERSON_C, "Person D"};
+    Random random = new Random(8);
+    EventStore store = new EventStore();
+    List<Event> events = new ArrayList<>();
+    FindMeetingQuery query = new FindMeetingQuery();
+
+    for (int round = 0; round < 500; round++) {
+      if (events.isEmpty() || random.nextInt(3) != 0) {
+        int start = random.nextInt(TimeRange.END_OF_DAY - 120);
+        Event event = new Event("Event " + round,
+            TimeRange.fromStartDuration(start, 15 * random.nextInt(8)),
+            Arrays.asList(people[random.nextInt(people.length)],
+                people[random.nextInt(people.length)]));
+        events.add(event);
+        store.add(event);
+      } else {
+        Assert.assertTrue(store.remove(events.remove(random.nextInt(events.size()))));
+      }
+
+      if (round % 10 == 0) {
+        MeetingRequest request = new MeetingRequest(
+            Arrays.asList(people[random.nextInt(people.length)], "Nobody"),
+            15 * (1 + random.nextInt(4)));
+        request.addOptionalAttendee(people[random.nextInt(people.length)]);
+
+        Assert.assertEquals(query.query(events, request), query.query(store, request));
+      }
+    }
+  }
+
+  private static void assertSameEvents(Collection<Event> expected, List<Event> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    Assert.assertTrue(actual.containsAll(expected));
+  }
+}
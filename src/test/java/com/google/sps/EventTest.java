@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final TimeRange WHEN =
+      TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(9, 0), 30);
+
+  @Test
+  public void attendeesBehaveAsASet() {
+    Event event = new Event("Event 1", WHEN, Arrays.asList(PERSON_B, PERSON_A, PERSON_B));
+    Set<String> attendees = event.getAttendees();
+
+    Assert.assertEquals(2, attendees.size());
+    Assert.assertTrue(attendees.contains(PERSON_A));
+    Assert.assertTrue(attendees.contains(new String(PERSON_B)));
+    Assert.assertFalse(attendees.contains(PERSON_C));
+    Assert.assertFalse(attendees.contains("Nobody ever named"));
+    Assert.assertEquals(new HashSet<>(Arrays.asList(PERSON_A, PERSON_B)), attendees);
+  }
+
+  @Test
+  public void attendeesCannotBeModified() {
+    Event event = new Event("Event 1", WHEN, Arrays.asList(PERSON_A));
+
+    try {
+      event.getAttendees().remove(PERSON_A);
+      Assert.fail();
+    } catch (UnsupportedOperationException expected) {
+      // The attendees are read-only.
+    }
+  }
+
+  @Test
+  public void equalityIgnoresAttendeeOrder() {
+    Event event = new Event("Event 1", WHEN, Arrays.asList(PERSON_A, PERSON_B));
+
+    Assert.assertEquals(event, new Event("Event 1", WHEN, Arrays.asList(PERSON_B, PERSON_A)));
+    Assert.assertNotEquals(event, new Event("Event 1", WHEN, Arrays.asList(PERSON_A)));
+    Assert.assertNotEquals(new Event("Event 1", WHEN, Collections.<String>emptyList()),
+        new Event("Event 1", WHEN, Arrays.asList(PERSON_C)));
+  }
+}
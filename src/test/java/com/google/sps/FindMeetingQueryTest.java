@@ -14,11 +14,23 @@
 
 package com.google.sps;
 
+import com.google.gson.Gson;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -454,4 +466,704 @@ public final class FindMeetingQueryTest {
 
         Assert.assertEquals(expected, actual);
     }
+
+    @Test
+    public void topSlotsRankedByOptionalAttendees() {
+        // Events  : |--B--|
+        //                      |--C--|
+        // Options :       |-BC-|
+        //           |----B,C busy----|
+        //
+        // Both optional attendees are free in the middle, only C at the
+        // start and only B at the end. A window without any optional
+        // attendee is never offered since one of them is always free.
+        Collection<Event> events = Arrays.asList(
+            new Event("Event 1", TimeRange.fromStartEnd(0, 600, false),
+                Arrays.asList(PERSON_B)),
+            new Event("Event 2", TimeRange.fromStartEnd(900, 1440, false),
+                Arrays.asList(PERSON_C)));
+
+        MeetingRequest request = new MeetingRequest(
+            Arrays.asList(PERSON_A), DURATION_1_HOUR);
+        request.addOptionalAttendee(PERSON_B);
+        request.addOptionalAttendee(PERSON_C);
+
+        List<TimeRange> actual = query.queryTop(events, request, 4);
+        List<TimeRange> expected = Arrays.asList(
+            TimeRange.fromStartEnd(600, 900, false),
+            TimeRange.fromStartEnd(0, 900, false),
+            TimeRange.fromStartEnd(600, 1440, false));
+
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(expected,
+            query.queryTop(new EventIndex(events), request, 4));
+    }
+
+    @Test
+    public void topSlotsStopAtLimit() {
+        // Same calendar, but the meeting no longer fits the window where
+        // both optional attendees are free.
+        Collection<Event> events = Arrays.asList(
+            new Event("Event 1", TimeRange.fromStartEnd(0, 600, false),
+                Arrays.asList(PERSON_B)),
+            new Event("Event 2", TimeRange.fromStartEnd(900, 1440, false),
+                Arrays.asList(PERSON_C)));
+
+        MeetingRequest request = new MeetingRequest(
+            Arrays.asList(PERSON_A), 400);
+        request.addOptionalAttendee(PERSON_B);
+        request.addOptionalAttendee(PERSON_C);
+
+        List<TimeRange> actual = query.queryTop(events, request, 2);
+        List<TimeRange> expected = Arrays.asList(
+            TimeRange.fromStartEnd(0, 900, false),
+            TimeRange.fromStartEnd(600, 1440, false));
+
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void topSlotsNeedPositiveLimit() {
+        query.queryTop(NO_EVENTS, new MeetingRequest(NO_ATTENDEES,
+            DURATION_1_HOUR), 0);
+    }
+
+    @Test
+    public void durationsMatchSingleQueries() {
+        // Events  :       |--A--|     |-B-|
+        // Day     : |-----------------------------|
+        Collection<Event> events = Arrays.asList(
+            new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+                Arrays.asList(PERSON_A)),
+            new Event("Event 2", TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES),
+                Arrays.asList(PERSON_B)),
+            new Event("Event 3", TimeRange.fromStartDuration(TIME_0930AM, DURATION_15_MINUTES),
+                Arrays.asList(PERSON_C)));
+
+        MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), 0);
+        request.addOptionalAttendee(PERSON_C);
+
+        long[] durations = {DURATION_90_MINUTES, DURATION_15_MINUTES,
+            DURATION_60_MINUTES, DURATION_15_MINUTES};
+        SortedMap<Long, Collection<TimeRange>> actual =
+            query.queryDurations(events, request, durations);
+
+        Assert.assertEquals(Arrays.asList(15L, 60L, 90L),
+            new ArrayList<Long>(actual.keySet()));
+        for (long duration : durations) {
+            MeetingRequest single =
+                new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), duration);
+            single.addOptionalAttendee(PERSON_C);
+
+            Assert.assertEquals(query.query(events, single), actual.get(duration));
+        }
+        Assert.assertEquals(actual,
+            query.queryDurations(new EventIndex(events), request, durations));
+    }
+
+    @Test
+    public void streamMatchesQuery() {
+        // Events  :       |--A--|     |-B-|
+        // Day     : |-----------------------------|
+        // Options : |--1--|     |--2--|   |---3---|
+        Collection<Event> events = Arrays.asList(
+            new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+                Arrays.asList(PERSON_A)),
+            new Event("Event 2", TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES),
+                Arrays.asList(PERSON_B)));
+
+        MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B),
+            DURATION_30_MINUTES);
+
+        Collection<TimeRange> expected = query.query(events, request);
+        Assert.assertEquals(3, expected.size());
+        Assert.assertEquals(expected,
+            query.queryAsStream(events, request).collect(Collectors.toList()));
+        Assert.assertEquals(expected,
+            query.queryAsStream(new EventIndex(events), request).collect(Collectors.toList()));
+
+        // The first available slot.
+        Assert.assertEquals(Arrays.asList(TimeRange.fromStartEnd(TimeRange.START_OF_DAY,
+            TIME_0800AM, false)),
+            query.queryAsStream(events, request).limit(1).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void earliestSlotAfterNotBefore() {
+        // Events  :       |--A--|     |-B-|
+        // Day     : |-----------------------------|
+        // Options :             |--1--|   |---2---|
+        EventIndex index = new EventIndex(Arrays.asList(
+            new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+                Arrays.asList(PERSON_A)),
+            new Event("Event 2", TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES),
+                Arrays.asList(PERSON_B))));
+
+        MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B),
+            DURATION_30_MINUTES);
+
+        Assert.assertEquals(Optional.of(TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false)),
+            query.findEarliest(index, request, TIME_0830AM));
+        Assert.assertEquals(Optional.of(TimeRange.fromStartEnd(TIME_0930AM, TIME_1000AM, false)),
+            query.findEarliest(index, request, TIME_0930AM));
+
+        // The half hour before B's event is too short for an hour long meeting.
+        MeetingRequest longer = new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B),
+            DURATION_1_HOUR);
+        Assert.assertEquals(Optional.of(TimeRange.fromStartEnd(TIME_1000AM + DURATION_30_MINUTES,
+            TimeRange.END_OF_DAY, true)),
+            query.findEarliest(index, longer, TIME_0930AM));
+        Assert.assertEquals(Optional.empty(),
+            query.findEarliest(index, longer, TimeRange.END_OF_DAY - 30));
+    }
+
+    @Test
+    public void earliestSlotTreatsBothListedAsOptional() {
+        // Events  :       |--A--|
+        // Day     : |-----------------------------|
+        // Options : |--------------1--------------|
+        EventIndex index = new EventIndex(Arrays.asList(
+            new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false),
+                Arrays.asList(PERSON_A))));
+
+        // addOptionalAttendee skips mandatory attendees, but a request read
+        // from JSON can list someone as both. The meeting is too long to fit
+        // around A's event, so only B counts.
+        MeetingRequest request = new Gson().fromJson("{\"attendees\":[\"" + PERSON_A +
+            "\",\"" + PERSON_B + "\"],\"optional_attendees\":[\"" + PERSON_A +
+            "\"],\"duration\":1000}", MeetingRequest.class);
+
+        Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY), query.query(index, request));
+        Assert.assertEquals(Optional.of(TimeRange.WHOLE_DAY),
+            query.findEarliest(index, request, TimeRange.START_OF_DAY));
+    }
+
+    @Test
+    public void earliestSlotAtEndOfDayIsEmpty() {
+        MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A),
+            DURATION_30_MINUTES);
+
+        Assert.assertEquals(Optional.empty(), query.findEarliest(new EventIndex(), request,
+            TimeRange.END_OF_DAY + 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void earliestSlotRejectsNegativeNotBefore() {
+        query.findEarliest(new EventIndex(), new MeetingRequest(Arrays.asList(PERSON_A),
+            DURATION_30_MINUTES), -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void earliestSlotRejectsNotBeforePastEndOfDay() {
+        query.findEarliest(new EventIndex(), new MeetingRequest(Arrays.asList(PERSON_A),
+            DURATION_30_MINUTES), TimeRange.END_OF_DAY + 2);
+    }
+
+    @Test
+    public void queryMatchesMinuteByMinuteScan() {
+        Random random = new Random(3);
+
+        for (int round = 0; round < 300; round++) {
+            // Every third round has more than 64 optional attendees, so
+            // that a free set takes more than one word.
+            boolean large = (round % 3 == 0);
+            int peopleCount = large ? 70 : 6;
+            List<String> people = new ArrayList<>();
+            for (int i = 0; i < peopleCount; i++) {
+                people.add("Person " + i);
+            }
+
+            List<Event> events = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                int start = random.nextInt(TimeRange.END_OF_DAY);
+                int end = Math.min(start + 1 + random.nextInt(180),
+                    TimeRange.END_OF_DAY + 1);
+                Collections.shuffle(people, random);
+                int attendeeCount =
+                    1 + random.nextInt(Math.min(peopleCount, 20));
+                events.add(new Event("Event " + i,
+                    TimeRange.fromStartEnd(start, end, false),
+                    new ArrayList<>(people.subList(0, attendeeCount))));
+            }
+
+            Collections.shuffle(people, random);
+            int mandatoryCount = random.nextInt(3);
+            int optionalCount = large
+                ? 65 + random.nextInt(peopleCount - mandatoryCount - 64)
+                : random.nextInt(peopleCount - mandatoryCount + 1);
+            List<String> mandatory = people.subList(0, mandatoryCount);
+            List<String> optional = people.subList(mandatoryCount,
+                mandatoryCount + optionalCount);
+            int duration = random.nextInt(120);
+
+            MeetingRequest request =
+                new MeetingRequest(new ArrayList<>(mandatory), duration);
+            for (String attendee : optional) {
+                request.addOptionalAttendee(attendee);
+            }
+
+            List<TimeRange> expected =
+                scanMinutes(events, mandatory, optional, duration);
+            Assert.assertEquals(expected,
+                new ArrayList<>(query.query(events, request)));
+            Assert.assertEquals(expected,
+                new ArrayList<>(query.query(new EventIndex(events), request)));
+        }
+    }
+
+    @Test
+    public void earliestSlotMatchesQuery() {
+        Random random = new Random(16);
+        for (int round = 0; round < 200; round++) {
+            assertEarliestSlotMatchesQuery(random, 1 + random.nextInt(60));
+        }
+    }
+
+    @Test
+    public void earliestZeroLengthSlotMatchesQuery() {
+        // An empty gap where one busy time ends as the next starts is not
+        // free time, for findEarliest as for query.
+        Random random = new Random(17);
+        for (int round = 0; round < 200; round++) {
+            assertEarliestSlotMatchesQuery(random, 0);
+        }
+    }
+
+    @Test
+    public void batchMatchesSingleQueries() {
+        Collection<Event> events = Arrays.asList(
+            new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+                Arrays.asList(PERSON_A)),
+            new Event("Event 2", TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false),
+                Arrays.asList(PERSON_B, PERSON_C)),
+            new Event("Event 3", TimeRange.fromStartDuration(TIME_1100AM, DURATION_60_MINUTES),
+                Arrays.asList(PERSON_D)));
+
+        List<MeetingRequest> requests = new ArrayList<>();
+        for (int duration : new int[] {DURATION_15_MINUTES, DURATION_90_MINUTES, 24 * 60}) {
+            requests.add(new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), duration));
+
+            MeetingRequest withOptional =
+                new MeetingRequest(Arrays.asList(PERSON_A), duration);
+            withOptional.addOptionalAttendee(PERSON_C);
+            withOptional.addOptionalAttendee(PERSON_D);
+            requests.add(withOptional);
+        }
+
+        List<Collection<TimeRange>> expected = new ArrayList<>();
+        for (MeetingRequest request : requests) {
+            expected.add(query.query(events, request));
+        }
+
+        Assert.assertEquals(expected, query.queryAll(events, requests));
+    }
+
+    @Test
+    public void matchesMinuteByMinuteScan() {
+        // Compare against a brute force scan of every minute of the day, both
+        // for small calendars and for ones dense enough to bucket the sweep
+        // points by minute.
+        Random random = new Random(1440);
+        String[] people = {PERSON_A, PERSON_B, PERSON_C, PERSON_D};
+
+        for (int eventCount : new int[] {5, 50, 500, 5000}) {
+            List<Event> events = new ArrayList<>();
+            boolean[] busy = new boolean[TimeRange.WHOLE_DAY.duration()];
+
+            for (int i = 0; i < eventCount; i++) {
+                int start = random.nextInt(TimeRange.END_OF_DAY);
+                int end = Math.min(start + 1 + random.nextInt(3),
+                    TimeRange.END_OF_DAY + 1);
+                String attendee = people[random.nextInt(people.length)];
+
+                events.add(new Event("Event " + i,
+                    TimeRange.fromStartEnd(start, end, false),
+                    Arrays.asList(attendee)));
+
+                if (attendee.equals(PERSON_A) || attendee.equals(PERSON_B)) {
+                    Arrays.fill(busy, start, end, true);
+                }
+            }
+
+            MeetingRequest request = new MeetingRequest(
+                Arrays.asList(PERSON_A, PERSON_B), DURATION_15_MINUTES);
+
+            List<TimeRange> expected = new ArrayList<>();
+            int freeStart = 0;
+            for (int minute = 0; minute <= busy.length; minute++) {
+                if (minute < busy.length && !busy[minute]) {
+                    continue;
+                }
+
+                if (minute - freeStart >= DURATION_15_MINUTES) {
+                    expected.add(TimeRange.fromStartEnd(freeStart, minute,
+                        false));
+                }
+                freeStart = minute + 1;
+            }
+
+            Assert.assertEquals(expected, query.query(events, request));
+        }
+    }
+
+    @Test
+    public void horizonMatchesMinuteByMinuteScan() {
+        // Three days starting on 2024-10-04, with events that cross midnight
+        // and the edges of the horizon.
+        long firstDay = 20000;
+        EpochTimeRange horizon = EpochTimeRange.ofDays(firstDay, 3);
+        Random random = new Random(firstDay);
+        String[] people = {PERSON_A, PERSON_B, PERSON_C};
+
+        EventIndex index = new EventIndex();
+        boolean[] busy = new boolean[(int) horizon.duration()];
+
+        for (int i = 0; i < 60; i++) {
+            long start = horizon.start() - 60 +
+                random.nextInt((int) horizon.duration() + 60);
+            long end = start + 1 + random.nextInt(240);
+            String attendee = people[random.nextInt(people.length)];
+
+            index.add(EpochTimeRange.fromStartEnd(start, end),
+                Arrays.asList(attendee));
+
+            if (!attendee.equals(PERSON_C)) {
+                for (long minute = Math.max(start, horizon.start());
+                        minute < Math.min(end, horizon.end()); minute++) {
+                    busy[(int) (minute - horizon.start())] = true;
+                }
+            }
+        }
+
+        MeetingRequest request = new MeetingRequest(
+            Arrays.asList(PERSON_A, PERSON_B), DURATION_15_MINUTES);
+
+        List<EpochTimeRange> expected = new ArrayList<>();
+        int freeStart = 0;
+        for (int minute = 0; minute <= busy.length; minute++) {
+            if (minute < busy.length && !busy[minute]) {
+                continue;
+            }
+
+            if (minute - freeStart >= DURATION_15_MINUTES) {
+                expected.add(EpochTimeRange.fromStartEnd(
+                    horizon.start() + freeStart, horizon.start() + minute));
+            }
+            freeStart = minute + 1;
+        }
+
+        Assert.assertEquals(expected, query.queryHorizon(index, request,
+            horizon, 0, Integer.MAX_VALUE));
+
+        Assert.assertEquals(expected, query.queryHorizonAsStream(index, request,
+            horizon).collect(Collectors.toList()));
+
+        // Pages are slices of the same answer.
+        Assert.assertEquals(expected.subList(2, 5),
+            query.queryHorizon(index, request, horizon, 2, 3));
+        Assert.assertEquals(Collections.emptyList(), query.queryHorizon(index,
+            request, horizon, expected.size(), 3));
+    }
+
+    @Test
+    public void chunkedSweepMatchesSingleSweep() {
+        // Two weeks of events on a quarter hour grid, so that many points
+        // share a time and chunk splits have to move past them. Each sweep
+        // is split into up to seven chunks however few points it has.
+        EpochTimeRange horizon = EpochTimeRange.ofDays(20000, 14);
+        Random random = new Random(21);
+        String[] people = {PERSON_A, PERSON_B, PERSON_C, PERSON_D};
+
+        EventIndex index = new EventIndex();
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long start = horizon.start() - 60 +
+                15 * random.nextInt((int) horizon.duration() / 15 + 8);
+            long duration = 15 * (1 + random.nextInt(8));
+            List<String> attendees = Arrays.asList(
+                people[random.nextInt(people.length)],
+                people[random.nextInt(people.length)]);
+
+            index.add(EpochTimeRange.fromStartDuration(start, duration),
+                attendees);
+            // The same event on the single day of an Event.
+            int dayStart = (int) Math.floorMod(start, 24 * 60L);
+            int dayEnd = (int) Math.min(dayStart + duration,
+                TimeRange.END_OF_DAY);
+            events.add(new Event("Event " + i,
+                TimeRange.fromStartEnd(dayStart, dayEnd, true), attendees));
+        }
+
+        MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A),
+            DURATION_30_MINUTES);
+        request.addOptionalAttendee(PERSON_B);
+        request.addOptionalAttendee(PERSON_C);
+        request.addOptionalAttendee(PERSON_D);
+
+        FindMeetingQuery single = new FindMeetingQuery(1, 1);
+        FindMeetingQuery chunked = new FindMeetingQuery(7, 1);
+
+        Assert.assertEquals(
+            single.queryHorizon(index, request, horizon, 0, Integer.MAX_VALUE),
+            chunked.queryHorizon(index, request, horizon, 0, Integer.MAX_VALUE));
+        Assert.assertEquals(single.query(events, request),
+            chunked.query(events, request));
+        Assert.assertEquals(single.queryTop(events, request, 5),
+            chunked.queryTop(events, request, 5));
+    }
+
+    @Test
+    public void manyAttendeesMatchSingleThreadedMerge() {
+        // 600 people over a week, few enough events that the slots are
+        // combined with the k-way merge rather than bucketed by minute.
+        EpochTimeRange horizon = EpochTimeRange.ofDays(20000, 7);
+        Random random = new Random(22);
+        int people = 600;
+
+        EventIndex index = new EventIndex();
+        for (int i = 0; i < 1200; i++) {
+            long start = horizon.start() +
+                random.nextInt((int) horizon.duration());
+            index.add(EpochTimeRange.fromStartDuration(start,
+                15 * (1 + random.nextInt(8))), Arrays.asList(
+                    "Person " + random.nextInt(people),
+                    "Person " + random.nextInt(people)));
+        }
+
+        MeetingRequest request = new MeetingRequest(
+            Arrays.asList("Person 0", "Person 1"), DURATION_60_MINUTES);
+        for (int person = 2; person < people; person++) {
+            request.addOptionalAttendee("Person " + person);
+        }
+
+        FindMeetingQuery single = new FindMeetingQuery(1, 1);
+        FindMeetingQuery parallel = new FindMeetingQuery(7, 1);
+
+        Assert.assertEquals(
+            single.queryHorizon(index, request, horizon, 0, Integer.MAX_VALUE),
+            parallel.queryHorizon(index, request, horizon, 0,
+                Integer.MAX_VALUE));
+        Assert.assertEquals(single.queryTop(index, request, 5),
+            parallel.queryTop(index, request, 5));
+    }
+
+    @Test
+    public void dayQueryIgnoresOtherDays() {
+        // A is busy all of the next day, which a query about the first day
+        // must not see.
+        EventIndex index = new EventIndex();
+        index.add(EpochTimeRange.ofDays(1, 1), Arrays.asList(PERSON_A));
+
+        MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A),
+            DURATION_1_HOUR);
+
+        Assert.assertEquals(Arrays.asList(TimeRange.WHOLE_DAY),
+            query.query(index, request));
+        Assert.assertEquals(Collections.emptyList(), query.queryHorizon(index,
+            request, EpochTimeRange.ofDays(1, 1), 0, 10));
+    }
+
+    @Test
+    public void sharedQueryIsThreadSafe() throws Exception {
+        // Answer the same requests serially and then from many threads sharing one query
+        // instance. Every concurrent answer must match its serial counterpart.
+        final int threadCount = 200;
+        final int people = 8;
+        Random random = new Random(2020);
+
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int start = random.nextInt(TimeRange.END_OF_DAY - DURATION_2_HOUR);
+            int duration = DURATION_15_MINUTES * (1 + random.nextInt(8));
+            events.add(new Event("Event " + i,
+                TimeRange.fromStartDuration(start, duration),
+                Arrays.asList("Person " + random.nextInt(people),
+                    "Person " + random.nextInt(people))));
+        }
+
+        List<MeetingRequest> requests = new ArrayList<>();
+        List<Collection<TimeRange>> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            MeetingRequest request = new MeetingRequest(
+                Arrays.asList("Person " + random.nextInt(people)),
+                DURATION_15_MINUTES * (1 + random.nextInt(4)));
+            request.addOptionalAttendee("Person " + random.nextInt(people));
+            request.addOptionalAttendee("Person " + random.nextInt(people));
+
+            requests.add(request);
+            expected.add(query.query(events, request));
+        }
+
+        CountDownLatch startGate = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                final int offset = t;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        startGate.await();
+                        for (int i = 0; i < requests.size(); i++) {
+                            int index = (i + offset) % requests.size();
+                            Collection<TimeRange> actual =
+                                query.query(events, requests.get(index));
+                            if (!expected.get(index).equals(actual)) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+
+            startGate.countDown();
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue(result.get());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void queryAfterVeryLargeQuery() {
+        // More busy intervals than the per-thread scratch keeps, so the
+        // second query on this thread starts from trimmed arrays.
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 70000; i++) {
+            events.add(new Event("Event " + i,
+                TimeRange.fromStartDuration(i % 1400, 30),
+                Arrays.asList(PERSON_A)));
+        }
+
+        MeetingRequest request =
+            new MeetingRequest(Arrays.asList(PERSON_B), DURATION_30_MINUTES);
+        request.addOptionalAttendee(PERSON_A);
+
+        Collection<TimeRange> expected = Arrays.asList(TimeRange.WHOLE_DAY);
+        Assert.assertEquals(expected, query.query(events, request));
+        Assert.assertEquals(expected, query.query(events, request));
+    }
+
+    private void assertEarliestSlotMatchesQuery(Random random, int duration) {
+        String[] people = {PERSON_A, PERSON_B, PERSON_C, PERSON_D};
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            int start = random.nextInt(TimeRange.END_OF_DAY);
+            int end = Math.min(start + 1 + random.nextInt(90), TimeRange.END_OF_DAY + 1);
+            events.add(new Event("Event " + i, TimeRange.fromStartEnd(start, end, false),
+                Arrays.asList(people[random.nextInt(people.length)])));
+        }
+
+        int notBefore = random.nextInt(TimeRange.END_OF_DAY);
+        MeetingRequest request =
+            new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B, PERSON_C), duration);
+
+        // The earliest window of the full answer that still fits the meeting
+        // once everything before notBefore is cut off.
+        Optional<TimeRange> expected = query.queryAsStream(events, request)
+            .filter(window -> window.end() > Math.max(window.start(), notBefore))
+            .filter(window -> window.end() - Math.max(window.start(), notBefore) >= duration)
+            .map(window -> TimeRange.fromStartEnd(Math.max(window.start(), notBefore),
+                window.end(), false))
+            .findFirst();
+
+        Assert.assertEquals(expected,
+            query.findEarliest(new EventIndex(events), request, notBefore));
+    }
+
+    /**
+     * Answers a request the slow way, from the state of every minute of the
+     * day: the ranges where the most optional attendees are free and the
+     * meeting fits, each widened for as long as at least those attendees
+     * stay free. Ties go to the set of attendees free the earliest.
+     */
+    private static List<TimeRange> scanMinutes(Collection<Event> events,
+            List<String> mandatory, List<String> optional, int duration) {
+        // The optional attendees free at each minute, or null where a
+        // mandatory attendee is busy.
+        BitSet[] free = new BitSet[TimeRange.END_OF_DAY + 1];
+        for (int minute = 0; minute < free.length; minute++) {
+            free[minute] = new BitSet();
+            free[minute].set(0, optional.size());
+        }
+        for (Event event : events) {
+            for (int minute = event.getWhen().start();
+                    minute < event.getWhen().end(); minute++) {
+                for (String attendee : event.getAttendees()) {
+                    if (mandatory.contains(attendee)) {
+                        free[minute] = null;
+                    }
+                    else if (free[minute] != null &&
+                            optional.contains(attendee)) {
+                        free[minute].clear(optional.indexOf(attendee));
+                    }
+                }
+            }
+        }
+
+        // Runs of minutes in the same state.
+        List<Integer> runStarts = new ArrayList<>();
+        for (int minute = 0; minute < free.length; minute++) {
+            if (minute == 0 ||
+                    !Objects.equals(free[minute], free[minute - 1])) {
+                runStarts.add(minute);
+            }
+        }
+        runStarts.add(free.length);
+
+        int runCount = runStarts.size() - 1;
+        int[] windowStarts = new int[runCount];
+        int[] windowEnds = new int[runCount];
+        BitSet best = null;
+        for (int run = 0; run < runCount; run++) {
+            BitSet set = free[runStarts.get(run)];
+            if (set == null) {
+                continue;
+            }
+
+            int first = run;
+            while (first > 0 && contains(free[runStarts.get(first - 1)], set)) {
+                first--;
+            }
+            int last = run;
+            while (last + 1 < runCount &&
+                    contains(free[runStarts.get(last + 1)], set)) {
+                last++;
+            }
+            windowStarts[run] = runStarts.get(first);
+            windowEnds[run] = runStarts.get(last + 1);
+
+            if (windowEnds[run] - windowStarts[run] >= duration &&
+                    (best == null || set.cardinality() > best.cardinality())) {
+                best = set;
+            }
+        }
+
+        List<TimeRange> windows = new ArrayList<>();
+        for (int run = 0; run < runCount; run++) {
+            TimeRange window = TimeRange.fromStartEnd(windowStarts[run],
+                windowEnds[run], false);
+            if (best != null && best.equals(free[runStarts.get(run)]) &&
+                    window.duration() >= duration &&
+                    (windows.isEmpty() ||
+                        !windows.get(windows.size() - 1).equals(window))) {
+                windows.add(window);
+            }
+        }
+
+        return windows;
+    }
+
+    private static boolean contains(BitSet outer, BitSet inner) {
+        if (outer == null) {
+            return false;
+        }
+
+        BitSet missing = (BitSet) inner.clone();
+        missing.andNot(outer);
+        return missing.isEmpty();
+    }
 }
@@ -0,0 +1,164 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class IndexSnapshotTest {
+  private static final String[] PEOPLE =
+      {"Person A", "Person B", "Person C", "Person D", "Zo\u00eb"};
+
+  private static final EpochTimeRange WEEK = EpochTimeRange.ofDays(0, 7);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void busyTimesSurviveRoundTrip() throws IOException {
+    List<Event> events = randomEvents(new Random(25), 300);
+    EventIndex index = new EventIndex(events);
+    Path path = folder.getRoot().toPath().resolve("index.snapshot");
+
+    index.writeSnapshot(path);
+    EventIndex opened = EventIndex.openSnapshot(path);
+
+    for (String person : PEOPLE) {
+      Assert.assertEquals(index.getBusyTimes(person), opened.getBusyTimes(person));
+    }
+    Assert.assertEquals(Collections.emptyList(), opened.getBusyTimes("Nobody"));
+    Assert.assertFalse(Files.exists(path.resolveSibling("index.snapshot.tmp")));
+  }
+
+  @Test
+  public void changesAfterOpeningMatchRebuiltIndex() throws IOException {
+    Random random = new Random(26);
+    List<Event> events = randomEvents(random, 200);
+    Path path = folder.getRoot().toPath().resolve("index.snapshot");
+    new EventIndex(events).writeSnapshot(path);
+    EventIndex opened = EventIndex.openSnapshot(path);
+
+    // Remove and move events from the snapshot, including every event of one attendee, and add
+    // events for someone the snapshot has never seen.
+    List<Event> current = new ArrayList<>();
+    for (Event event : events) {
+      if (event.getAttendees().contains(PEOPLE[0])) {
+        Assert.assertTrue(opened.remove(event));
+      } else if (random.nextInt(3) == 0) {
+        TimeRange when =
+            TimeRange.fromStartDuration(random.nextInt(TimeRange.END_OF_DAY - 60), 45);
+        Assert.assertTrue(opened.move(event, when));
+        current.add(new Event(event.getTitle(), when, event.getAttendees()));
+      } else {
+        current.add(event);
+      }
+    }
+    Event added = new Event("New", TimeRange.fromStartDuration(600, 30), Arrays.asList("New"));
+    opened.add(added);
+    current.add(added);
+
+    EventIndex rebuilt = new EventIndex(current);
+    for (String person : PEOPLE) {
+      Assert.assertEquals(rebuilt.getBusyTimes(person), opened.getBusyTimes(person));
+    }
+    Assert.assertEquals(Collections.emptyList(), opened.getBusyTimes(PEOPLE[0]));
+    Assert.assertEquals(rebuilt.getBusyTimes("New"), opened.getBusyTimes("New"));
+
+    // A snapshot of the changed index holds the changes, and nothing of the removed attendee.
+    opened.writeSnapshot(path);
+    EventIndex reopened = EventIndex.openSnapshot(path);
+    for (String person : PEOPLE) {
+      Assert.assertEquals(rebuilt.getBusyTimes(person, WEEK), reopened.getBusyTimes(person, WEEK));
+    }
+  }
+
+  @Test
+  public void queryMatchesIndex() throws IOException {
+    Random random = new Random(27);
+    EventIndex index = new EventIndex(randomEvents(random, 200));
+    Path path = folder.getRoot().toPath().resolve("index.snapshot");
+    index.writeSnapshot(path);
+    EventIndex opened = EventIndex.openSnapshot(path);
+
+    FindMeetingQuery query = new FindMeetingQuery();
+    for (int i = 0; i < 20; i++) {
+      MeetingRequest request = new MeetingRequest(
+          Arrays.asList(PEOPLE[random.nextInt(PEOPLE.length)], "Nobody"),
+          15 * (1 + random.nextInt(4)));
+      request.addOptionalAttendee(PEOPLE[random.nextInt(PEOPLE.length)]);
+
+      Assert.assertEquals(query.query(index, request), query.query(opened, request));
+      Assert.assertEquals(query.findEarliest(index, request, WEEK),
+          query.findEarliest(opened, request, WEEK));
+    }
+  }
+
+  @Test
+  public void snapshotKeepsItsSource() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("index.snapshot");
+    EventIndex index = new EventIndex(randomEvents(new Random(29), 10));
+    index.writeSnapshot(path, -42);
+
+    EventIndex opened = EventIndex.openSnapshot(path, -42);
+    for (String person : PEOPLE) {
+      Assert.assertEquals(index.getBusyTimes(person), opened.getBusyTimes(person));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void snapshotOfOtherEventsIsRejected() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("index.snapshot");
+    new EventIndex(randomEvents(new Random(30), 10)).writeSnapshot(path, 1);
+
+    EventIndex.openSnapshot(path, 2);
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedSnapshotIsRejected() throws IOException {
+    Path path = folder.getRoot().toPath().resolve("index.snapshot");
+    new EventIndex(randomEvents(new Random(28), 10)).writeSnapshot(path);
+
+    byte[] bytes = Files.readAllBytes(path);
+    Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+
+    EventIndex.openSnapshot(path);
+  }
+
+  private static List<Event> randomEvents(Random random, int count) {
+    List<Event> events = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int start = random.nextInt(TimeRange.END_OF_DAY - 120);
+      events.add(new Event("Event " + i,
+          TimeRange.fromStartDuration(start, 15 * random.nextInt(8)),
+          Arrays.asList(PEOPLE[random.nextInt(PEOPLE.length)],
+              PEOPLE[random.nextInt(PEOPLE.length)])));
+    }
+    return events;
+  }
+}
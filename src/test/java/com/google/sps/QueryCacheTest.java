@@ -0,0 +1,123 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class QueryCacheTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+
+  private static final Event EVENT_A = new Event("Event 1",
+      TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES), Arrays.asList(PERSON_A));
+  private static final Event EVENT_C = new Event("Event 2",
+      TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES), Arrays.asList(PERSON_C));
+
+  private FindMeetingQuery query;
+  private EventIndex index;
+
+  @Before
+  public void setUp() {
+    query = new FindMeetingQuery();
+    index = new EventIndex(Arrays.asList(EVENT_A, EVENT_C));
+  }
+
+  @Test
+  public void attendeeOrderDoesNotMatter() {
+    QueryCache cache = new QueryCache(query, index, 10);
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    MeetingRequest reordered =
+        new MeetingRequest(Arrays.asList(PERSON_B, PERSON_A), DURATION_30_MINUTES);
+
+    Collection<TimeRange> answer = cache.query(request);
+    Assert.assertEquals(query.query(index, request), answer);
+    Assert.assertSame(answer, cache.query(reordered));
+    Assert.assertEquals(1, cache.hitCount());
+    Assert.assertEquals(1, cache.missCount());
+
+    // Making someone optional instead of mandatory, or changing the duration, is another request.
+    MeetingRequest optional = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    optional.addOptionalAttendee(PERSON_B);
+    cache.query(optional);
+    cache.query(new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), 60));
+    Assert.assertEquals(3, cache.missCount());
+  }
+
+  @Test
+  public void changesOnlyInvalidateTheirAttendees() {
+    QueryCache cache = new QueryCache(query, index, 10);
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    request.addOptionalAttendee(PERSON_B);
+    cache.query(request);
+
+    // Person C is not part of the request, so the answer still holds.
+    index.remove(EVENT_C);
+    cache.query(request);
+    Assert.assertEquals(1, cache.hitCount());
+
+    // Person B is, even as an optional attendee.
+    index.add(new Event("Event 3", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_B)));
+    Collection<TimeRange> answer = cache.query(request);
+    Assert.assertEquals(query.query(index, request), answer);
+    Assert.assertEquals(2, cache.missCount());
+    Assert.assertEquals(1, cache.invalidationCount());
+
+    // Undoing a change still counts as a change.
+    index.move(EVENT_A, TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES));
+    index.move(new Event(EVENT_A.getTitle(),
+        TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES), EVENT_A.getAttendees()),
+        EVENT_A.getWhen());
+    Assert.assertEquals(answer, cache.query(request));
+    Assert.assertEquals(2, cache.invalidationCount());
+  }
+
+  @Test
+  public void leastRecentlyUsedAnswerIsEvicted() {
+    QueryCache cache = new QueryCache(query, index, 2);
+    MeetingRequest requestA = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+    MeetingRequest requestB = new MeetingRequest(Arrays.asList(PERSON_B), DURATION_30_MINUTES);
+    MeetingRequest requestC = new MeetingRequest(Arrays.asList(PERSON_C), DURATION_30_MINUTES);
+
+    cache.query(requestA);
+    cache.query(requestB);
+    cache.query(requestA);
+    cache.query(requestC);
+    Assert.assertEquals(1, cache.evictionCount());
+    Assert.assertEquals(2, cache.size());
+
+    // B was used least recently, so it went and A stayed.
+    cache.query(requestA);
+    Assert.assertEquals(2, cache.hitCount());
+    cache.query(requestB);
+    Assert.assertEquals(4, cache.missCount());
+  }
+}
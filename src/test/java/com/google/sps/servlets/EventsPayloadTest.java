@@ -0,0 +1,101 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.Event;
+import com.google.sps.EventStore;
+import com.google.sps.TimeRange;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventsPayloadTest {
+  private static final Event EVENT_1 = new Event("Event 1",
+      TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(9, 0), 30),
+      Arrays.asList("Person A"));
+  private static final Event EVENT_2 = new Event("Event 2",
+      TimeRange.fromStartDuration(TimeRange.getTimeInMinutes(10, 0), 30),
+      Collections.<String>emptyList());
+
+  @Test
+  public void payloadIsEventsJson() throws Exception {
+    EventStore store = new EventStore(Arrays.asList(EVENT_2, EVENT_1));
+    EventsPayload payload = new EventsPayload(store);
+
+    // Events are listed in start order.
+    Assert.assertEquals(Json.GSON.toJson(new Event[] {EVENT_1, EVENT_2}),
+        new String(payload.snapshot().json, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void payloadIsReusedUntilEventsChange() throws Exception {
+    EventStore store = new EventStore(Arrays.asList(EVENT_1, EVENT_2));
+    EventsPayload payload = new EventsPayload(store);
+
+    byte[] first = payload.snapshot().json;
+    Assert.assertSame(first, payload.snapshot().json);
+
+    store.remove(EVENT_2);
+    byte[] changed = payload.snapshot().json;
+    Assert.assertNotSame(first, changed);
+    Assert.assertEquals(Json.GSON.toJson(new Event[] {EVENT_1}),
+        new String(changed, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void gzippedPayloadAndEtagFollowTheJson() throws Exception {
+    EventStore store = new EventStore(Arrays.asList(EVENT_1, EVENT_2));
+    EventsPayload payload = new EventsPayload(store);
+    EventsPayload.Snapshot first = payload.snapshot();
+
+    ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(first.gzipped))) {
+      byte[] buffer = new byte[256];
+      for (int read; (read = in.read(buffer)) != -1; ) {
+        unzipped.write(buffer, 0, read);
+      }
+    }
+    Assert.assertArrayEquals(first.json, unzipped.toByteArray());
+    Assert.assertNotEquals(first.etag, first.gzippedEtag);
+
+    // Rebuilding the same events gives the same tags, changing them gives new ones.
+    Assert.assertEquals(first.etag, new EventsPayload(store).snapshot().etag);
+
+    store.add(EVENT_1);
+    Assert.assertNotEquals(first.etag, payload.snapshot().etag);
+    Assert.assertNotEquals(first.gzippedEtag, payload.snapshot().gzippedEtag);
+  }
+
+  @Test
+  public void eventsKeepTheirJsonShape() throws Exception {
+    Event event = new Event("Event 1", TimeRange.fromStartDuration(540, 30),
+        Arrays.asList("Person A"));
+    String json = "{\"title\":\"Event 1\",\"when\":{\"start\":540,\"duration\":30},"
+        + "\"attendees\":[\"Person A\"]}";
+
+    Assert.assertEquals(json, Json.GSON.toJson(event));
+    Assert.assertEquals(event, Json.GSON.fromJson(json, Event.class));
+  }
+}
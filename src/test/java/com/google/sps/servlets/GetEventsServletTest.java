@@ -0,0 +1,66 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.TimeRange;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class GetEventsServletTest {
+  private static final String ETAG = "\"0123abcd\"";
+  private static final String GZIPPED_ETAG = "\"0123abcd-gzip\"";
+
+  @Test
+  public void ifNoneMatch() {
+    Assert.assertFalse(GetEventsServlet.matchesEtag(null, ETAG, GZIPPED_ETAG));
+    Assert.assertFalse(GetEventsServlet.matchesEtag("\"stale\"", ETAG, GZIPPED_ETAG));
+
+    Assert.assertTrue(GetEventsServlet.matchesEtag(ETAG, ETAG, GZIPPED_ETAG));
+    Assert.assertTrue(GetEventsServlet.matchesEtag("\"stale\", " + GZIPPED_ETAG, ETAG,
+        GZIPPED_ETAG));
+    Assert.assertTrue(GetEventsServlet.matchesEtag("W/" + ETAG, ETAG, GZIPPED_ETAG));
+    Assert.assertTrue(GetEventsServlet.matchesEtag(" * ", ETAG, GZIPPED_ETAG));
+  }
+
+  @Test
+  public void acceptEncoding() {
+    Assert.assertFalse(GetEventsServlet.acceptsGzip(null));
+    Assert.assertFalse(GetEventsServlet.acceptsGzip("identity"));
+    Assert.assertFalse(GetEventsServlet.acceptsGzip("gzip;q=0"));
+    Assert.assertFalse(GetEventsServlet.acceptsGzip("gzip;q=0, *"));
+
+    Assert.assertTrue(GetEventsServlet.acceptsGzip("gzip, deflate, br"));
+    Assert.assertTrue(GetEventsServlet.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+    Assert.assertTrue(GetEventsServlet.acceptsGzip("*"));
+  }
+
+  @Test
+  public void rangeParameters() {
+    Assert.assertEquals(TimeRange.WHOLE_DAY, GetEventsServlet.parseRange(null, null));
+    Assert.assertEquals(TimeRange.fromStartEnd(540, 600, false),
+        GetEventsServlet.parseRange("540", " 600"));
+    Assert.assertEquals(TimeRange.fromStartEnd(540, TimeRange.END_OF_DAY, true),
+        GetEventsServlet.parseRange("540", null));
+
+    Assert.assertNull(GetEventsServlet.parseRange("nine", null));
+    Assert.assertNull(GetEventsServlet.parseRange("-1", null));
+    Assert.assertNull(GetEventsServlet.parseRange(null, "1441"));
+    Assert.assertNull(GetEventsServlet.parseRange("600", "540"));
+  }
+}